@@ -0,0 +1,67 @@
+import ledger.Account;
+import ledger.AccountIndex;
+import ledger.AccountType;
+
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opens and closes accounts that share a phone number at the same moment, on two threads, and checks
+ * after every round that {@link AccountIndex} still finds the account that was opened. Closing the last
+ * account with a phone number drops its entry, so an open that lands in between must not add itself to
+ * the dropped entry and vanish from phone search.
+ *
+ * Run with: {@code javac AccountIndexStressTest.java && java AccountIndexStressTest [rounds]}
+ * Exits with status 1 if an opened account could not be found.
+ */
+public class AccountIndexStressTest {
+
+    private static final String PHONE = "(555) 010-2000";
+
+    public static void main(String[] args) throws Exception {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+
+        AccountIndex index = new AccountIndex();
+        CyclicBarrier barrier = new CyclicBarrier(2);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        long lost = 0L;
+        long start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            Account closing = account("C" + round);
+            Account opening = account("O" + round);
+            index.add(closing);
+            Future<?> close = pool.submit(() -> {
+                barrier.await();
+                index.remove(closing);
+                return null;
+            });
+            Future<?> open = pool.submit(() -> {
+                barrier.await();
+                index.add(opening);
+                return null;
+            });
+            close.get(1, TimeUnit.MINUTES);
+            open.get(1, TimeUnit.MINUTES);
+
+            if (!index.findByPhoneNumber(PHONE).contains(opening.getAccountNumber())) {
+                lost++;
+            }
+            index.remove(opening);
+        }
+        pool.shutdown();
+
+        System.out.printf("%d rounds in %.2f s%n", rounds, (System.nanoTime() - start) / 1e9);
+        if (lost > 0) {
+            System.out.println("FAILED: " + lost + " opened accounts missing from the phone index.");
+            System.exit(1);
+        }
+        System.out.println("OK: every opened account was found by phone number.");
+    }
+
+    private static Account account(String accountNumber) {
+        return new Account(accountNumber, "Index " + accountNumber, "Test Street", PHONE, 0L, AccountType.CHECKING);
+    }
+}
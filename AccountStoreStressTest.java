@@ -0,0 +1,150 @@
+import ledger.Account;
+import ledger.AccountStore;
+import ledger.AccountType;
+import ledger.ColumnarAccountStore;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs a seeded random sequence of adds, replacements, removals, balance updates and lookups against a
+ * {@link ColumnarAccountStore} and a {@link HashMap} side by side, and checks after every step that
+ * they agree. Account numbers mix the current ten-digit form, legacy hex in both cases and free-form
+ * numbers, from pools small enough that accounts are removed and re-added often, so probe chains are
+ * repeatedly broken by deletions and the table grows. Meanwhile another thread keeps reading an account
+ * that is never removed, which must always be found with its balance, type and name.
+ *
+ * At the end every account of the map must be found in the store, and {@link AccountStore#forEach}
+ * and {@link AccountStore#size} must report exactly the map's accounts.
+ *
+ * Run with: {@code javac AccountStoreStressTest.java && java AccountStoreStressTest [operations] [seed]}
+ * Exits with status 1 if the store and the map disagreed anywhere.
+ */
+public class AccountStoreStressTest {
+
+    private static final String FIXED = "1999999999"; // Read by the concurrent reader; never chosen below
+    private static final long FIXED_BALANCE = 777L;
+
+    public static void main(String[] args) throws Exception {
+        int operations = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 42L;
+
+        ColumnarAccountStore store = new ColumnarAccountStore();
+        Map<String, Account> expected = new HashMap<>();
+        store.add(new Account(FIXED, "Fixed", "Test Street", "000", FIXED_BALANCE, AccountType.SAVINGS));
+        expected.put(FIXED, new Account(FIXED, "Fixed", "Test Street", "000", FIXED_BALANCE, AccountType.SAVINGS));
+
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicLong readerMismatches = new AtomicLong();
+        Thread reader = new Thread(() -> {
+            while (!done.get()) {
+                Account account = store.get(FIXED);
+                if (store.getBalance(FIXED) != FIXED_BALANCE || store.getAccountType(FIXED) != AccountType.SAVINGS
+                        || account == null || !account.getName().equals("Fixed")) {
+                    readerMismatches.incrementAndGet();
+                }
+            }
+        }, "store-reader");
+        reader.start();
+
+        Random random = new Random(seed);
+        long mismatches = 0L;
+        long start = System.nanoTime();
+        for (int i = 0; i < operations; i++) {
+            String accountNumber = accountNumber(random);
+            Account reference = expected.get(accountNumber);
+            switch (random.nextInt(6)) {
+                case 0 -> {
+                    Account account = account(accountNumber, "Added " + i, i, random.nextBoolean() ? AccountType.SAVINGS : AccountType.CHECKING);
+                    if (store.add(account) != (reference == null)) {
+                        mismatches++;
+                    }
+                    expected.putIfAbsent(accountNumber, account);
+                }
+                case 1 -> {
+                    Account account = account(accountNumber, "Replaced " + i, i, AccountType.CHECKING);
+                    if (!same(store.put(account), reference)) {
+                        mismatches++;
+                    }
+                    expected.put(accountNumber, account);
+                }
+                case 2 -> {
+                    if (!same(store.remove(accountNumber), reference)) {
+                        mismatches++;
+                    }
+                    expected.remove(accountNumber);
+                }
+                case 3 -> {
+                    long balance = random.nextInt(1_000_00);
+                    store.setBalance(accountNumber, balance);
+                    if (reference != null) {
+                        expected.put(accountNumber, account(accountNumber, reference.getName(), balance, reference.getAccountType()));
+                    }
+                }
+                default -> {
+                    if (!same(store.get(accountNumber), reference)
+                            || store.contains(accountNumber) != (reference != null)
+                            || store.getBalance(accountNumber) != (reference == null ? AccountStore.NO_ACCOUNT : reference.getBalance())
+                            || store.getAccountType(accountNumber) != (reference == null ? null : reference.getAccountType())) {
+                        mismatches++;
+                    }
+                }
+            }
+        }
+        done.set(true);
+        reader.join();
+
+        // Nothing may have been lost or misplaced by the deletions: every account is still reachable
+        for (Account reference : expected.values()) {
+            if (!same(store.get(reference.getAccountNumber()), reference)) {
+                mismatches++;
+            }
+        }
+        Map<String, Account> visited = new HashMap<>();
+        store.forEach(account -> visited.put(account.getAccountNumber(), account));
+        if (store.size() != expected.size() || visited.size() != expected.size()) {
+            mismatches++;
+        }
+        for (Account reference : expected.values()) {
+            if (!same(visited.get(reference.getAccountNumber()), reference)) {
+                mismatches++;
+            }
+        }
+
+        System.out.printf("%d operations in %.2f s, %d accounts at the end%n", operations, (System.nanoTime() - start) / 1e9, store.size());
+        if (mismatches > 0 || readerMismatches.get() > 0) {
+            System.out.println("FAILED: " + mismatches + " mismatches with the map, " + readerMismatches.get() + " bad concurrent reads.");
+            System.exit(1);
+        }
+        System.out.println("OK: the store matched the map throughout.");
+    }
+
+    // Upper and lower case hex of the same value are different accounts
+    private static String accountNumber(Random random) {
+        String accountNumber;
+        do {
+            accountNumber = switch (random.nextInt(5)) {
+                case 0 -> String.format("%08X", random.nextInt(5_000));
+                case 1 -> String.format("%08x", random.nextInt(5_000) + 0xA0000);
+                case 2 -> "X-" + random.nextInt(3_000);
+                default -> Long.toString(1_000_000_001L + random.nextInt(20_000));
+            };
+        } while (accountNumber.equals(FIXED));
+        return accountNumber;
+    }
+
+    private static Account account(String accountNumber, String name, long balance, AccountType accountType) {
+        return new Account(accountNumber, name, "Test Street", "000", balance, accountType);
+    }
+
+    private static boolean same(Account actual, Account expected) {
+        if (actual == null || expected == null) {
+            return actual == expected;
+        }
+        return actual.getAccountNumber().equals(expected.getAccountNumber()) && actual.getName().equals(expected.getName())
+                && actual.getBalance() == expected.getBalance() && actual.getAccountType() == expected.getAccountType();
+    }
+}
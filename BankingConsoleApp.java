@@ -1,78 +1,254 @@
-import java.io.*;
+import ledger.*;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.time.YearMonth;
+import java.time.ZoneId;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 public class BankingConsoleApp {
 
     private static final Scanner scanner = new Scanner(System.in);
-    private static final Map<String, Account> accounts = new HashMap<>(); // Account Number -> Account
-    private static final List<Transaction> transactions = new ArrayList<>(); // Store transaction history
     private static final String ACCOUNTS_FILE = "accounts.dat";
-    private static final String TRANSACTIONS_FILE = "transactions.dat";
+    private static final String TRANSACTIONS_FILE = "transactions.dat"; // Only read to migrate it into TRANSACTIONS_DIRECTORY
+    private static final String TRANSACTIONS_DIRECTORY = "transactions";
+    private static final String JOURNAL_FILE = "ledger.journal";
+    private static final String IDS_FILE = "ids.dat";
+    private static final String STATEMENTS_DIRECTORY = "statements";
+    // Read at startup if it exists; see VelocityRules for the format
+    private static final String VELOCITY_RULES_FILE = System.getProperty("banking.velocityRules", "velocity-rules.csv");
+    // With syncEvery 1, a change is acknowledged once its journal record is fsync'd, and the records of
+    // concurrent changes share an fsync: up to batchSize of them, waiting up to batchDelayMicros for more.
+    // Above 1, changes are acknowledged before the fsync, which runs once that many records are pending
+    // or after syncIntervalMs. Batch mode does that by default, since it runs one command at a time and
+    // an fsync per command would dominate the run.
+    private static final int JOURNAL_SYNC_EVERY = Integer.getInteger("banking.journal.syncEvery", 1);
+    private static final int BATCH_JOURNAL_SYNC_EVERY = Integer.getInteger("banking.journal.syncEvery", 1024);
+    private static final long JOURNAL_SYNC_INTERVAL_MS = Long.getLong("banking.journal.syncIntervalMs", 50L);
+    private static final int JOURNAL_BATCH_SIZE = Integer.getInteger("banking.journal.batchSize", 256);
+    private static final long JOURNAL_BATCH_DELAY_MICROS = Long.getLong("banking.journal.batchDelayMicros", 0L);
+    // Background checkpoint interval; 0 checkpoints on exit only.
+    private static final long CHECKPOINT_INTERVAL_MS = Long.getLong("banking.checkpoint.intervalMs", 30_000L);
+    private static final int HISTORY_PAGE_SIZE = 10;
+    // Rendered balances and history pages of recently viewed accounts; 0 entries turns the cache off
+    private static final int VIEW_CACHE_MAX_ENTRIES = Integer.getInteger("banking.viewCache.maxEntries", AccountViewCache.DEFAULT_MAX_ENTRIES);
+    private static final long VIEW_CACHE_MAX_BYTES = Long.getLong("banking.viewCache.maxBytes", AccountViewCache.DEFAULT_MAX_BYTES);
+    private static final int SEARCH_RESULT_LIMIT = 20;
+    private static final int DEFAULT_SERVER_PORT = 8080;
+    private static final int DEFAULT_RETENTION_DAYS = 365;
+    private static final long SAVINGS_INTEREST_BASIS_POINTS = Long.getLong("banking.savings.interestBasisPoints", MonthEndJob.DEFAULT_INTEREST_BASIS_POINTS);
+    private static final int MONTH_END_PARALLELISM = Integer.getInteger("banking.monthEnd.parallelism", Runtime.getRuntime().availableProcessors());
+    // map keeps Account objects in a hash map; columnar keeps balances in primitive arrays, for very large ledgers
+    private static final String ACCOUNT_STORE = System.getProperty("banking.accountStore", "map");
+    private static final LedgerEngine engine = new LedgerEngine(ACCOUNT_STORE.equals("columnar") ? new ColumnarAccountStore() : new MapAccountStore());
+    private static LedgerStore store;
 
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--batch")) {
+            runBatch(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--server")) {
+            runServer(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--month-end")) {
+            runMonthEnd(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--compact")) {
+            runCompaction(args);
+            return;
+        }
+
+        store = new LedgerStore(engine, ACCOUNTS_FILE, TRANSACTIONS_FILE, TRANSACTIONS_DIRECTORY, JOURNAL_FILE, IDS_FILE, journalSettings(JOURNAL_SYNC_EVERY));
         loadData(); // Load accounts and transactions from file
+        store.startBackgroundCheckpoints(CHECKPOINT_INTERVAL_MS);
         displayMainMenu();
         saveData(); // Save accounts and transactions to file before exiting
+        System.out.println(store.getCheckpointMetrics());
+        store.close();
     }
 
-    // --- File I/O ---
-
-    private static void loadData() {
-        loadAccounts();
-        loadTransactions();
+    // Usage: java BankingConsoleApp --batch <commands file>
+    private static void runBatch(String[] args) {
+        if (args.length != 2) {
+            System.err.println("Usage: java BankingConsoleApp --batch <commands file>");
+            System.exit(2);
+        }
+        Path file = Path.of(args[1]);
+        if (!Files.isReadable(file)) {
+            System.err.println("Batch file not found or not readable: " + file);
+            System.exit(2);
+        }
+
+        store = new LedgerStore(engine, ACCOUNTS_FILE, TRANSACTIONS_FILE, TRANSACTIONS_DIRECTORY, JOURNAL_FILE, IDS_FILE, journalSettings(BATCH_JOURNAL_SYNC_EVERY));
+        loadData();
+        store.startBackgroundCheckpoints(CHECKPOINT_INTERVAL_MS);
+        try {
+            new BatchRunner(engine).run(file).print(System.out);
+            System.out.print(engine.getMetrics());
+            System.out.print(engine.getVelocityRules());
+        } catch (IOException e) {
+            // Commands applied before the failure are already journaled, so still checkpoint them
+            System.err.println("Error reading batch file: " + e.getMessage());
+        }
+        saveData();
+        System.out.println(store.getCheckpointMetrics());
+        store.close();
     }
 
-    private static void saveData() {
-        saveAccounts();
-        saveTransactions();
-    }
+    // Usage: java BankingConsoleApp --server [port]
+    // Listens on the loopback interface only; set -Dbanking.server.bindAll=true to listen on all of them.
+    private static void runServer(String[] args) {
+        int port = DEFAULT_SERVER_PORT;
+        try {
+            if (args.length > 2) {
+                throw new NumberFormatException();
+            }
+            if (args.length == 2) {
+                port = Integer.parseInt(args[1]);
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Usage: java BankingConsoleApp --server [port]");
+            System.exit(2);
+        }
 
-    private static void loadAccounts() {
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(ACCOUNTS_FILE))) {
-            Map<String, Account> loadedAccounts = (Map<String, Account>) ois.readObject();
-            accounts.clear(); // Clear existing accounts before loading
-            accounts.putAll(loadedAccounts);
-            System.out.println("Accounts loaded from " + ACCOUNTS_FILE);
-        } catch (FileNotFoundException e) {
-            System.out.println("Accounts file not found. Starting with an empty account list.");
-        } catch (IOException | ClassNotFoundException e) {
-            System.err.println("Error loading accounts: " + e.getMessage());
-            // Handle the error appropriately - possibly exit or start with an empty map.
+        store = new LedgerStore(engine, ACCOUNTS_FILE, TRANSACTIONS_FILE, TRANSACTIONS_DIRECTORY, JOURNAL_FILE, IDS_FILE, journalSettings(JOURNAL_SYNC_EVERY));
+        loadData();
+        store.startBackgroundCheckpoints(CHECKPOINT_INTERVAL_MS);
+
+        InetAddress bindAddress = Boolean.getBoolean("banking.server.bindAll") ? null : InetAddress.getLoopbackAddress();
+        LedgerHttpServer server;
+        try {
+            server = new LedgerHttpServer(engine, new InetSocketAddress(bindAddress, port));
+        } catch (IOException e) {
+            System.err.println("Error starting server on port " + port + ": " + e.getMessage());
+            store.close();
+            System.exit(1);
+            return;
         }
+
+        // Runs on Ctrl+C or SIGTERM: finish requests in progress, then checkpoint as on a normal exit
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop(1);
+            saveData();
+            System.out.print(engine.getMetrics());
+            System.out.print(engine.getVelocityRules());
+            System.out.print(engine.getViewCache());
+            System.out.println(store.getCheckpointMetrics());
+            store.close();
+        }, "ledger-server-shutdown"));
+        server.start();
+        System.out.println("Serving the ledger on http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + " (Ctrl+C to stop)");
     }
 
-    private static void saveAccounts() {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(ACCOUNTS_FILE))) {
-            oos.writeObject(accounts);
-            System.out.println("Accounts saved to " + ACCOUNTS_FILE);
+    // Usage: java BankingConsoleApp --month-end [yyyy-MM]
+    // Defaults to the month before the current one. Safe to run again for the same month.
+    private static void runMonthEnd(String[] args) {
+        YearMonth period = YearMonth.now().minusMonths(1);
+        try {
+            if (args.length > 2) {
+                throw new DateTimeException("Too many arguments");
+            }
+            if (args.length == 2) {
+                period = YearMonth.parse(args[1]);
+            }
+        } catch (DateTimeException e) {
+            System.err.println("Usage: java BankingConsoleApp --month-end [yyyy-MM]");
+            System.exit(2);
+        }
+
+        store = new LedgerStore(engine, ACCOUNTS_FILE, TRANSACTIONS_FILE, TRANSACTIONS_DIRECTORY, JOURNAL_FILE, IDS_FILE, journalSettings(JOURNAL_SYNC_EVERY));
+        loadData();
+        MonthEndJob job = new MonthEndJob(engine, Path.of(STATEMENTS_DIRECTORY), SAVINGS_INTEREST_BASIS_POINTS, ZoneId.systemDefault());
+        try (ForkJoinPool pool = new ForkJoinPool(MONTH_END_PARALLELISM)) {
+            job.run(period, pool).print(System.out);
+            System.out.print(engine.getMetrics());
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
         } catch (IOException e) {
-            System.err.println("Error saving accounts: " + e.getMessage());
+            System.err.println("Error creating statement directory: " + e.getMessage());
+        }
+        saveData(); // Postings are already journaled; this checkpoints them
+        System.out.println(store.getCheckpointMetrics());
+        store.close();
+    }
+
+    // Usage: java BankingConsoleApp --compact [retention days]
+    // Archives transactions older than the retention window and those of closed accounts.
+    private static void runCompaction(String[] args) {
+        int retentionDays = DEFAULT_RETENTION_DAYS;
+        try {
+            if (args.length > 2) {
+                throw new NumberFormatException();
+            }
+            if (args.length == 2) {
+                retentionDays = Integer.parseInt(args[1]);
+            }
+            if (retentionDays < LedgerStore.MIN_RETENTION_DAYS) {
+                throw new NumberFormatException();
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Usage: java BankingConsoleApp --compact [retention days, at least " + LedgerStore.MIN_RETENTION_DAYS + "]");
+            System.exit(2);
         }
+
+        store = new LedgerStore(engine, ACCOUNTS_FILE, TRANSACTIONS_FILE, TRANSACTIONS_DIRECTORY, JOURNAL_FILE, IDS_FILE, journalSettings(JOURNAL_SYNC_EVERY));
+        loadData();
+        boolean compacted = store.compact(retentionDays);
+        saveData();
+        store.close();
+        if (!compacted) {
+            System.exit(1);
+        }
+    }
+
+    // --- File I/O ---
+
+    private static LedgerJournal.Settings journalSettings(int syncEvery) {
+        return syncEvery > 1 ? LedgerJournal.Settings.relaxed(syncEvery, JOURNAL_SYNC_INTERVAL_MS)
+                : LedgerJournal.Settings.durable(JOURNAL_BATCH_SIZE, JOURNAL_BATCH_DELAY_MICROS);
     }
 
-    private static void loadTransactions() {
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(TRANSACTIONS_FILE))) {
-            List<Transaction> loadedTransactions = (List<Transaction>) ois.readObject();
-            transactions.clear(); // Clear existing transactions before loading
-            transactions.addAll(loadedTransactions);
-            System.out.println("Transactions loaded from " + TRANSACTIONS_FILE);
-        } catch (FileNotFoundException e) {
-            System.out.println("Transactions file not found. Starting with an empty transaction list.");
-        } catch (IOException | ClassNotFoundException e) {
-            System.err.println("Error loading transactions: " + e.getMessage());
-            // Handle the error appropriately - possibly exit or start with an empty list.
+    private static void loadData() {
+        engine.setViewCache(new AccountViewCache(VIEW_CACHE_MAX_ENTRIES, VIEW_CACHE_MAX_BYTES));
+        loadVelocityRules(); // Before the ledger, so their windows are filled from its recent history
+        try {
+            store.load();
+        } catch (IOException e) {
+            // Running without it would let the next checkpoint overwrite the file that could not be read
+            System.err.println(e.getMessage() + ". Restore or move the file away and start again.");
+            store.close();
+            System.exit(1);
         }
     }
 
-    private static void saveTransactions() {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(TRANSACTIONS_FILE))) {
-            oos.writeObject(transactions);
-            System.out.println("Transactions saved to " + TRANSACTIONS_FILE);
+    // A rules file that is present but invalid stops the application rather than running without the rules
+    private static void loadVelocityRules() {
+        Path file = Path.of(VELOCITY_RULES_FILE);
+        if (!Files.exists(file)) {
+            return;
+        }
+        try {
+            VelocityRules rules = VelocityRules.load(file);
+            engine.setVelocityRules(rules);
+            System.out.println("Loaded " + rules.getRules().size() + " velocity rules from " + file);
         } catch (IOException e) {
-            System.err.println("Error saving transactions: " + e.getMessage());
+            System.err.println("Error loading velocity rules: " + e.getMessage());
+            System.exit(1);
         }
     }
 
+    private static void saveData() {
+        store.save();
+    }
+
 
     private static void displayMainMenu() {
         while (true) {
@@ -84,7 +260,9 @@ public class BankingConsoleApp {
             System.out.println("5. Check Balance");
             System.out.println("6. View Transaction History");
             System.out.println("7. Close Account");
-            System.out.println("8. Exit");
+            System.out.println("8. Search Accounts");
+            System.out.println("9. Show Metrics");
+            System.out.println("10. Exit");
             System.out.print("Enter your choice: ");
 
             int choice = getValidIntInput();
@@ -100,10 +278,11 @@ public class BankingConsoleApp {
                 case 5 -> checkBalanceWorkflow();
                 case 6 -> viewTransactionHistoryWorkflow();
                 case 7 -> closeAccountWorkflow();
-                case 8 -> {
+                case 8 -> searchAccountsWorkflow();
+                case 9 -> showMetricsWorkflow();
+                case 10 -> {
                     System.out.println("Exiting...");
-                    saveData(); // Save data on exit
-                    return;
+                    return; // main saves the data once the menu returns
                 }
                 default -> System.out.println("Invalid choice. Please try again.");
             }
@@ -119,7 +298,7 @@ public class BankingConsoleApp {
         System.out.print("Enter phone number: ");
         String phoneNumber = scanner.nextLine();
         System.out.print("Enter initial deposit amount: ");
-        double initialDeposit = getValidDoubleInput();
+        long initialDeposit = getValidAmountInput();
 
         // Select account type
         System.out.println("Select Account Type:");
@@ -141,21 +320,13 @@ public class BankingConsoleApp {
     }
 
 
-    private static String createAccount(String name, String address, String phoneNumber, double initialDeposit, AccountType accountType) {
-        if (initialDeposit < getMinimumInitialDeposit(accountType)) {
-            System.out.println("Error: Initial deposit must be at least $" + getMinimumInitialDeposit(accountType) + " for a " + accountType + " account.");
+    static String createAccount(String name, String address, String phoneNumber, long initialDeposit, AccountType accountType) {
+        LedgerResult result = engine.createAccount(name, address, phoneNumber, initialDeposit, accountType);
+        if (!result.isSuccess()) {
+            System.out.println(result.getMessage());
             return null; // Return null if account creation fails
         }
-
-        String accountNumber = generateAccountNumber();
-        Account account = new Account(accountNumber, name, address, phoneNumber, initialDeposit, accountType);
-        accounts.put(accountNumber, account);
-
-        // Record initial deposit as a transaction
-        Transaction initialDepositTransaction = new Transaction(accountNumber, TransactionType.DEPOSIT, initialDeposit, "Initial deposit");
-        transactions.add(initialDepositTransaction);
-
-        return accountNumber; // Return account number on success
+        return result.getAccountNumber(); // Return account number on success
     }
 
     private static void depositWorkflow() {
@@ -163,33 +334,24 @@ public class BankingConsoleApp {
         System.out.print("Enter account number: ");
         String accountNumber = scanner.nextLine();
 
-        Account account = accounts.get(accountNumber);
+        Account account = engine.findAccount(accountNumber);
         if (account == null) {
             System.out.println("Account not found.");
             return;
         }
 
         System.out.print("Enter deposit amount: ");
-        double amount = getValidDoubleInput();
+        long amount = getValidAmountInput();
         deposit(accountNumber, amount);
     }
 
-    private static void deposit(String accountNumber, double amount) {
-        if (amount <= 0) {
-            System.out.println("Invalid deposit amount. Amount must be positive.");
-            return;
-        }
-
-        Account account = accounts.get(accountNumber);
-        if (account == null) {
-            System.out.println("Account not found.");
+    static void deposit(String accountNumber, long amount) {
+        LedgerResult result = engine.deposit(accountNumber, amount);
+        if (!result.isSuccess()) {
+            System.out.println(result.getMessage());
             return;
         }
-
-        account.setBalance(account.getBalance() + amount);
-        Transaction transaction = new Transaction(accountNumber, TransactionType.DEPOSIT, amount, "Deposit");
-        transactions.add(transaction);
-        System.out.println("Deposit successful. New balance: $" + account.getBalance());
+        System.out.println("Deposit successful. New balance: $" + Money.format(result.getBalance()));
     }
 
 
@@ -198,45 +360,24 @@ public class BankingConsoleApp {
         System.out.print("Enter account number: ");
         String accountNumber = scanner.nextLine();
 
-        Account account = accounts.get(accountNumber);
+        Account account = engine.findAccount(accountNumber);
         if (account == null) {
             System.out.println("Account not found.");
             return;
         }
 
         System.out.print("Enter withdrawal amount: ");
-        double amount = getValidDoubleInput();
+        long amount = getValidAmountInput();
         withdraw(accountNumber, amount);
     }
 
-    private static void withdraw(String accountNumber, double amount) {
-        if (amount <= 0) {
-            System.out.println("Invalid withdrawal amount. Amount must be positive.");
-            return;
-        }
-
-        Account account = accounts.get(accountNumber);
-        if (account == null) {
-            System.out.println("Account not found.");
-            return;
-        }
-
-        if (account.getBalance() < amount) {
-            System.out.println("Insufficient funds.");
+    static void withdraw(String accountNumber, long amount) {
+        LedgerResult result = engine.withdraw(accountNumber, amount);
+        if (!result.isSuccess()) {
+            System.out.println(result.getMessage());
             return;
         }
-
-        if (account.getAccountType() == AccountType.SAVINGS &&
-            (transactions.stream().filter(t -> t.getAccountNumber().equals(accountNumber) && t.getTransactionType() == TransactionType.WITHDRAWAL).count() >= 6)) {
-                System.out.println("Savings account withdrawal limit reached.  You can only make 6 withdrawals per month.");
-                return;
-        }
-
-
-        account.setBalance(account.getBalance() - amount);
-        Transaction transaction = new Transaction(accountNumber, TransactionType.WITHDRAWAL, amount, "Withdrawal");
-        transactions.add(transaction);
-        System.out.println("Withdrawal successful. New balance: $" + account.getBalance());
+        System.out.println("Withdrawal successful. New balance: $" + Money.format(result.getBalance()));
     }
 
 
@@ -245,7 +386,7 @@ public class BankingConsoleApp {
         System.out.print("Enter source account number: ");
         String sourceAccountNumber = scanner.nextLine();
 
-        Account sourceAccount = accounts.get(sourceAccountNumber);
+        Account sourceAccount = engine.findAccount(sourceAccountNumber);
         if (sourceAccount == null) {
             System.out.println("Source account not found.");
             return;
@@ -254,50 +395,29 @@ public class BankingConsoleApp {
         System.out.print("Enter destination account number: ");
         String destinationAccountNumber = scanner.nextLine();
 
-        Account destinationAccount = accounts.get(destinationAccountNumber);
+        Account destinationAccount = engine.findAccount(destinationAccountNumber);
         if (destinationAccount == null) {
             System.out.println("Destination account not found.");
             return;
         }
 
         System.out.print("Enter transfer amount: ");
-        double amount = getValidDoubleInput();
+        long amount = getValidAmountInput();
 
         transferFunds(sourceAccountNumber, destinationAccountNumber, amount);
     }
 
 
-    private static void transferFunds(String sourceAccountNumber, String destinationAccountNumber, double amount) {
-        if (amount <= 0) {
-            System.out.println("Invalid transfer amount. Amount must be positive.");
-            return;
-        }
-
-        Account sourceAccount = accounts.get(sourceAccountNumber);
-        Account destinationAccount = accounts.get(destinationAccountNumber);
-
-        if (sourceAccount == null || destinationAccount == null) {
-            System.out.println("One or both accounts not found.");
-            return;
-        }
-
-        if (sourceAccount.getBalance() < amount) {
-            System.out.println("Insufficient funds in source account.");
+    private static void transferFunds(String sourceAccountNumber, String destinationAccountNumber, long amount) {
+        LedgerResult result = engine.transferFunds(sourceAccountNumber, destinationAccountNumber, amount);
+        if (!result.isSuccess()) {
+            System.out.println(result.getMessage());
             return;
         }
 
-        sourceAccount.setBalance(sourceAccount.getBalance() - amount);
-        destinationAccount.setBalance(destinationAccount.getBalance() + amount);
-
-        Transaction transferOut = new Transaction(sourceAccountNumber, TransactionType.TRANSFER_OUT, amount, "Transfer to " + destinationAccountNumber);
-        transactions.add(transferOut);
-
-        Transaction transferIn = new Transaction(destinationAccountNumber, TransactionType.TRANSFER_IN, amount, "Transfer from " + sourceAccountNumber);
-        transactions.add(transferIn);
-
         System.out.println("Transfer successful.");
-        System.out.println("Source account new balance: $" + sourceAccount.getBalance());
-        System.out.println("Destination account new balance: $" + destinationAccount.getBalance());
+        System.out.println("Source account new balance: $" + Money.format(result.getBalance()));
+        System.out.println("Destination account new balance: $" + Money.format(result.getCounterpartyBalance()));
     }
 
 
@@ -307,13 +427,13 @@ public class BankingConsoleApp {
         System.out.print("Enter account number: ");
         String accountNumber = scanner.nextLine();
 
-        Account account = accounts.get(accountNumber);
-        if (account == null) {
+        String balance = engine.balanceView(accountNumber, "console", account -> "Account balance: $" + Money.format(account.getBalance()));
+        if (balance == null) {
             System.out.println("Account not found.");
             return;
         }
 
-        System.out.println("Account balance: $" + account.getBalance());
+        System.out.println(balance);
     }
 
     private static void viewTransactionHistoryWorkflow() {
@@ -321,23 +441,67 @@ public class BankingConsoleApp {
         System.out.print("Enter account number: ");
         String accountNumber = scanner.nextLine();
 
-        Account account = accounts.get(accountNumber);  // Try to retrieve account for history
+        Account account = engine.findAccount(accountNumber);  // Try to retrieve account for history
 
         if (account == null) {
             System.out.println("Account not found.");
             return;
         }
 
-        boolean found = false;
-        for (Transaction transaction : transactions) {
-            if (transaction.getAccountNumber().equals(accountNumber)) {
-                System.out.println(transaction); // Assuming Transaction has a toString method
-                found = true;
+        // Newest first, one page at a time, so only the rows actually shown are read
+        AccountViewCache.View view = engine.historyPageView(accountNumber, TransactionStore.NEWEST, HISTORY_PAGE_SIZE, "console", BankingConsoleApp::renderHistoryPage);
+        if (view.getPage().getTransactions().isEmpty()) {
+            System.out.println("No transactions found for account number: " + accountNumber);
+            return;
+        }
+
+        while (true) {
+            System.out.print(view.getText());
+            HistoryPage page = view.getPage();
+            if (!page.hasNext()) {
+                List<Transaction> shown = page.getTransactions();
+                if (shown.get(shown.size() - 1).getTransactionType() == TransactionType.CARRIED_FORWARD) {
+                    viewArchivedHistory(accountNumber);
+                }
+                return;
+            }
+            System.out.print("Press Enter for older transactions, or type q to return to the menu: ");
+            if (scanner.nextLine().trim().equalsIgnoreCase("q")) {
+                return;
             }
+            view = engine.historyPageView(accountNumber, page.getNextCursor(), HISTORY_PAGE_SIZE, "console", BankingConsoleApp::renderHistoryPage);
         }
+    }
 
-        if (!found) {
-            System.out.println("No transactions found for account number: " + accountNumber);
+    private static String renderHistoryPage(HistoryPage page) {
+        StringBuilder text = new StringBuilder(160 * page.getTransactions().size());
+        for (Transaction transaction : page.getTransactions()) {
+            text.append(transaction).append(System.lineSeparator());
+        }
+        return text.toString();
+    }
+
+    // Transactions before the carried-forward balance are in the archive, read one month at a time
+    private static void viewArchivedHistory(String accountNumber) {
+        while (true) {
+            System.out.print("Older transactions are archived. Enter a month (yyyy-MM) to view it, or press Enter to return to the menu: ");
+            String input = scanner.nextLine().trim();
+            if (input.isEmpty()) {
+                return;
+            }
+            try {
+                List<Transaction> archived = store.archivedHistory(accountNumber, YearMonth.parse(input));
+                if (archived.isEmpty()) {
+                    System.out.println("No archived transactions for " + input + ".");
+                }
+                for (Transaction transaction : archived) {
+                    System.out.println(transaction);
+                }
+            } catch (DateTimeException e) {
+                System.out.println("Invalid month. Use the form 2024-01.");
+            } catch (IOException e) {
+                System.out.println("Error reading the archive: " + e.getMessage());
+            }
         }
     }
 
@@ -346,28 +510,56 @@ public class BankingConsoleApp {
         System.out.print("Enter account number: ");
         String accountNumber = scanner.nextLine();
 
-        Account account = accounts.get(accountNumber);
-        if (account == null) {
-            System.out.println("Account not found.");
+        LedgerResult result = engine.closeAccount(accountNumber);
+        if (!result.isSuccess()) {
+            System.out.println(result.getMessage());
             return;
         }
+        System.out.println("Account closed successfully.");
+    }
+
 
-        // Implement additional checks if needed (e.g., outstanding loans).
-        if (account.getBalance() > 0) {
-            System.out.println("Please withdraw the remaining balance before closing the account.");
+    private static void searchAccountsWorkflow() {
+        System.out.println("\n--- Search Accounts ---");
+        System.out.println("1. By phone number");
+        System.out.println("2. By name");
+        System.out.print("Enter your choice (1 or 2): ");
+        int searchChoice = getValidIntInput(1, 2);
+
+        // Consume the newline character after reading the integer
+        scanner.nextLine();
+
+        List<Account> found;
+        if (searchChoice == 1) {
+            System.out.print("Enter phone number: ");
+            found = engine.findAccountsByPhoneNumber(scanner.nextLine());
+        } else {
+            System.out.print("Enter the start of the name, or of any word in it: ");
+            found = engine.findAccountsByNamePrefix(scanner.nextLine(), SEARCH_RESULT_LIMIT + 1);
+        }
+
+        if (found.isEmpty()) {
+            System.out.println("No matching accounts found.");
             return;
         }
+        for (Account account : found.subList(0, Math.min(found.size(), SEARCH_RESULT_LIMIT))) {
+            System.out.println(account.getAccountNumber() + "  " + account.getName() + "  " + account.getPhoneNumber() + "  " + account.getAccountType());
+        }
+        if (found.size() > SEARCH_RESULT_LIMIT) {
+            System.out.println("Showing the first " + SEARCH_RESULT_LIMIT + " matches. Search again with more of the name to narrow them down.");
+        }
+    }
 
-        accounts.remove(accountNumber);
-        System.out.println("Account closed successfully.");
+    private static void showMetricsWorkflow() {
+        System.out.println("\n--- Metrics ---");
+        System.out.print(engine.getMetrics());
+        System.out.print(engine.getVelocityRules());
+        System.out.print(engine.getViewCache());
+        System.out.println(store.getCheckpointMetrics());
     }
 
 
     // Utility methods
-    private static String generateAccountNumber() {
-        return UUID.randomUUID().toString().substring(0, 8).toUpperCase(); // Generate a random 8-character alphanumeric ID
-    }
-
     private static int getValidIntInput() {
         while (true) {
             try {
@@ -398,148 +590,20 @@ public class BankingConsoleApp {
     }
 
 
-    private static double getValidDoubleInput() {
+    // Reads an amount such as 25 or 25.10 and returns it in cents.
+    private static long getValidAmountInput() {
         while (true) {
+            String input = scanner.nextLine(); // Read the whole line, including the newline character
             try {
-                double value = scanner.nextDouble();
-                scanner.nextLine(); // Consume the newline character
+                long value = Money.parse(input);
                 if (value >= 0) { // Ensure input is non-negative for money
                     return value;
                 } else {
                     System.out.println("Please enter a non-negative amount.");
                 }
-            } catch (InputMismatchException e) {
-                System.out.println("Invalid input. Please enter a number.");
-                scanner.next(); // Clear the invalid input from the scanner
-                scanner.nextLine(); // Consume the newline character
+            } catch (NumberFormatException e) {
+                System.out.println("Invalid input. Please enter a number with at most two decimal places.");
             }
         }
     }
-
-
-    private static double getMinimumInitialDeposit(AccountType accountType) {
-        return switch (accountType) {
-            case SAVINGS -> 50.0;
-            case CHECKING -> 0.0; // Some checking accounts might have no minimum
-            default -> 0.0; // Default to zero in case of unexpected types
-        };
-    }
-
-
-    // Data Classes
-    static class Account implements Serializable { // Implement Serializable
-        private final String accountNumber;
-        private final String name;
-        private final String address;
-        private final String phoneNumber;
-        private double balance;
-        private final AccountType accountType;
-
-        public Account(String accountNumber, String name, String address, String phoneNumber, double balance, AccountType accountType) {
-            this.accountNumber = accountNumber;
-            this.name = name;
-            this.address = address;
-            this.phoneNumber = phoneNumber;
-            this.balance = balance;
-            this.accountType = accountType;
-        }
-
-        public String getAccountNumber() {
-            return accountNumber;
-        }
-
-        public String getName() {
-            return name;
-        }
-
-        public String getAddress() {
-            return address;
-        }
-
-        public String getPhoneNumber() {
-            return phoneNumber;
-        }
-
-        public double getBalance() {
-            return balance;
-        }
-
-        public void setBalance(double balance) {
-            this.balance = balance;
-        }
-
-        public AccountType getAccountType() {
-            return accountType;
-        }
-
-        @Override
-        public String toString() {
-            return "Account{" +
-                   "accountNumber='" + accountNumber + '\'' +
-                   ", name='" + name + '\'' +
-                   ", balance=" + balance +
-                   ", accountType=" + accountType +
-                   '}';
-        }
-    }
-
-    enum AccountType implements Serializable { // Implement Serializable
-        SAVINGS,
-        CHECKING
-    }
-
-
-    static class Transaction implements Serializable { // Implement Serializable
-        private final String accountNumber;
-        private final TransactionType transactionType;
-        private final double amount;
-        private final String description;
-        private final String transactionId;
-
-        public Transaction(String accountNumber, TransactionType transactionType, double amount, String description) {
-            this.accountNumber = accountNumber;
-            this.transactionType = transactionType;
-            this.amount = amount;
-            this.description = description;
-            this.transactionId = UUID.randomUUID().toString().substring(0, 8).toUpperCase(); // Generate transaction ID
-        }
-
-        public String getAccountNumber() {
-            return accountNumber;
-        }
-
-        public TransactionType getTransactionType() {
-            return transactionType;
-        }
-
-        public double getAmount() {
-            return amount;
-        }
-
-        public String getDescription() {
-            return description;
-        }
-
-        public String getTransactionId() {
-            return transactionId;
-        }
-
-        @Override
-        public String toString() {
-            return "Transaction{" +
-                   "transactionId='" + transactionId + '\'' +
-                   ", accountNumber='" + accountNumber + '\'' +
-                   ", transactionType=" + transactionType +
-                   ", amount=" + amount +
-                   ", description='" + description + '\'' +
-                   '}';
-        }
-    }
-
-    enum TransactionType implements Serializable { // Implement Serializable
-        DEPOSIT,
-        WITHDRAWAL,
-        TRANSFER_IN,
-        TRANSFER_OUT
-    }
 }
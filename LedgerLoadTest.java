@@ -0,0 +1,190 @@
+import ledger.LedgerEngine;
+import ledger.LedgerHttpServer;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Drives the HTTP endpoints of {@link LedgerHttpServer} at increasing concurrency and reports throughput
+ * and latency percentiles for each level. Every client is a virtual thread that sends requests back to
+ * back: 40% balance checks, 30% transfers, 10% each deposits, withdrawals and history pages, spread over
+ * a fixed set of CHECKING accounts it creates first.
+ *
+ * Without a URL it starts an in-memory server (no journal, no files) on a free loopback port in the same
+ * JVM, so the numbers include the client's own CPU use; give the URL of a running
+ * {@code BankingConsoleApp --server} to measure that instead, journal included.
+ *
+ * Run with: {@code java LedgerLoadTest [seconds per level] [max concurrency] [base URL]}
+ * Exits with status 1 if any request failed (an I/O error or a 5xx response). Business rejections such as
+ * insufficient funds are expected and counted separately.
+ */
+public class LedgerLoadTest {
+
+    private static final int ACCOUNTS = 64;
+    private static final String OPENING_BALANCE = "1000000.00";
+    private static final Pattern ACCOUNT_NUMBER = Pattern.compile("\"accountNumber\":\"([^\"]+)\"");
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        int maxConcurrency = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+
+        LedgerHttpServer server = null;
+        URI baseUri;
+        if (args.length > 2) {
+            baseUri = URI.create(args[2].endsWith("/") ? args[2] : args[2] + "/");
+        } else {
+            server = new LedgerHttpServer(new LedgerEngine(), new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            server.start();
+            baseUri = URI.create("http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/");
+        }
+
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        List<String> accountNumbers = new ArrayList<>();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            HttpResponse<String> response = client.send(post(baseUri.resolve("accounts"),
+                    "{\"name\":\"Load " + i + "\",\"address\":\"Test Street\",\"phoneNumber\":\"000\",\"initialDeposit\":\"" + OPENING_BALANCE + "\",\"accountType\":\"CHECKING\"}"),
+                    HttpResponse.BodyHandlers.ofString());
+            Matcher matcher = ACCOUNT_NUMBER.matcher(response.body());
+            if (response.statusCode() != 201 || !matcher.find()) {
+                throw new IllegalStateException("Could not create account: " + response.statusCode() + " " + response.body());
+            }
+            accountNumbers.add(matcher.group(1));
+        }
+
+        System.out.println("Target: " + baseUri + ", " + seconds + " s per level, " + Runtime.getRuntime().availableProcessors() + " CPUs");
+        System.out.printf(Locale.ROOT, "%11s %10s %9s %7s %10s %9s %9s %9s%n",
+                "concurrency", "requests", "rejected", "errors", "req/s", "p50 ms", "p99 ms", "max ms");
+
+        // One short unmeasured round first so JIT compilation does not land in the first level
+        runLevel(client, baseUri, accountNumbers, 8, 1);
+        long failures = 0;
+        for (int concurrency = 1; concurrency <= maxConcurrency; concurrency *= 2) {
+            Level level = runLevel(client, baseUri, accountNumbers, concurrency, seconds);
+            failures += level.errors;
+            level.print(concurrency);
+        }
+
+        if (server != null) {
+            server.stop(0);
+        }
+        if (failures > 0) {
+            System.out.println("FAILED: " + failures + " requests failed");
+            System.exit(1);
+        }
+    }
+
+    private static final class Level {
+        private long[] latencies = new long[0];
+        private long rejected;
+        private long errors;
+        private long elapsedNanos;
+
+        void print(int concurrency) {
+            Arrays.sort(latencies);
+            double seconds = elapsedNanos / 1e9;
+            System.out.printf(Locale.ROOT, "%11d %10d %9d %7d %10.0f %9.2f %9.2f %9.2f%n",
+                    concurrency, latencies.length, rejected, errors, latencies.length / seconds,
+                    percentile(0.50) / 1e6, percentile(0.99) / 1e6, percentile(1.0) / 1e6);
+        }
+
+        private long percentile(double fraction) {
+            if (latencies.length == 0) {
+                return 0L;
+            }
+            int rank = (int) Math.ceil(fraction * latencies.length);
+            return latencies[Math.max(0, rank - 1)];
+        }
+    }
+
+    // Latencies of one client, grown as needed
+    private static final class Samples {
+        private long[] latencies = new long[1024];
+        private int size;
+        private long rejected;
+        private long errors;
+
+        void add(long nanos) {
+            if (size == latencies.length) {
+                latencies = Arrays.copyOf(latencies, size * 2);
+            }
+            latencies[size++] = nanos;
+        }
+    }
+
+    private static Level runLevel(HttpClient client, URI baseUri, List<String> accountNumbers, int concurrency, int seconds) throws Exception {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.SECONDS.toNanos(seconds);
+        List<Future<Samples>> clients = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < concurrency; c++) {
+                clients.add(executor.submit(() -> {
+                    Samples samples = new Samples();
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while (System.nanoTime() < deadline) {
+                        HttpRequest request = nextRequest(baseUri, accountNumbers, random);
+                        long sent = System.nanoTime();
+                        try {
+                            int status = client.send(request, HttpResponse.BodyHandlers.ofString()).statusCode();
+                            samples.add(System.nanoTime() - sent);
+                            if (status >= 500) {
+                                samples.errors++;
+                            } else if (status >= 400) {
+                                samples.rejected++;
+                            }
+                        } catch (java.io.IOException e) {
+                            samples.errors++;
+                        }
+                    }
+                    return samples;
+                }));
+            }
+        }
+
+        Level level = new Level();
+        level.elapsedNanos = System.nanoTime() - start;
+        for (Future<Samples> future : clients) {
+            Samples samples = future.get();
+            int offset = level.latencies.length;
+            level.latencies = Arrays.copyOf(level.latencies, offset + samples.size);
+            System.arraycopy(samples.latencies, 0, level.latencies, offset, samples.size);
+            level.rejected += samples.rejected;
+            level.errors += samples.errors;
+        }
+        return level;
+    }
+
+    private static HttpRequest nextRequest(URI baseUri, List<String> accountNumbers, ThreadLocalRandom random) {
+        String account = accountNumbers.get(random.nextInt(accountNumbers.size()));
+        String amount = (1 + random.nextInt(500)) + "." + (10 + random.nextInt(90));
+        int operation = random.nextInt(10);
+        if (operation < 4) {
+            return HttpRequest.newBuilder(baseUri.resolve("accounts/" + account)).GET().build();
+        } else if (operation < 7) {
+            String destination = accountNumbers.get(random.nextInt(accountNumbers.size()));
+            return post(baseUri.resolve("transfers"), "{\"from\":\"" + account + "\",\"to\":\"" + destination + "\",\"amount\":\"" + amount + "\"}");
+        } else if (operation == 7) {
+            return post(baseUri.resolve("accounts/" + account + "/deposit"), "{\"amount\":\"" + amount + "\"}");
+        } else if (operation == 8) {
+            return post(baseUri.resolve("accounts/" + account + "/withdraw"), "{\"amount\":\"" + amount + "\"}");
+        }
+        return HttpRequest.newBuilder(baseUri.resolve("accounts/" + account + "/transactions?limit=10")).GET().build();
+    }
+
+    private static HttpRequest post(URI uri, String json) {
+        return HttpRequest.newBuilder(uri)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+    }
+}
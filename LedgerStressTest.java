@@ -0,0 +1,95 @@
+import ledger.AccountStore;
+import ledger.AccountType;
+import ledger.ColumnarAccountStore;
+import ledger.LedgerEngine;
+import ledger.LedgerResult;
+import ledger.MapAccountStore;
+import ledger.Money;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Hammers a {@link LedgerEngine} with concurrent transfers, deposits and withdrawals and checks that no
+ * money is created or lost: the final total must equal the opening total plus deposits minus withdrawals.
+ * Transfers between the same pairs of accounts run in both directions, so a lock-ordering bug shows up
+ * as a deadlock and the run times out.
+ *
+ * Run with: {@code javac LedgerStressTest.java && java LedgerStressTest [threads] [operationsPerThread] [map|columnar]}
+ * Exits with status 1 if the check fails.
+ */
+public class LedgerStressTest {
+
+    private static final int ACCOUNTS = 64;
+    private static final long OPENING_BALANCE = 1_000_00L;
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors() * 2;
+        int operationsPerThread = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+        AccountStore store = args.length > 2 && args[2].equals("columnar") ? new ColumnarAccountStore() : new MapAccountStore();
+
+        LedgerEngine engine = new LedgerEngine(16, store); // Few stripes so unrelated accounts also contend
+        List<String> accountNumbers = new ArrayList<>();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            // CHECKING accounts so the SAVINGS monthly limit does not reject most withdrawals
+            accountNumbers.add(engine.createAccount("Stress " + i, "Test Street", "000", OPENING_BALANCE, AccountType.CHECKING).getAccountNumber());
+        }
+        long openingTotal = engine.totalBalance();
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<long[]>> results = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            results.add(pool.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long deposited = 0L;
+                long withdrawn = 0L;
+                for (int i = 0; i < operationsPerThread; i++) {
+                    String source = accountNumbers.get(random.nextInt(ACCOUNTS));
+                    String destination = accountNumbers.get(random.nextInt(ACCOUNTS));
+                    long amount = 1 + random.nextInt(500_00);
+                    int operation = random.nextInt(10);
+                    if (operation == 0) {
+                        if (engine.deposit(source, amount).isSuccess()) {
+                            deposited += amount;
+                        }
+                    } else if (operation == 1) {
+                        if (engine.withdraw(source, amount).isSuccess()) {
+                            withdrawn += amount;
+                        }
+                    } else {
+                        LedgerResult result = engine.transferFunds(source, destination, amount);
+                        if (!result.isSuccess() && result.getStatus() != LedgerResult.Status.INSUFFICIENT_FUNDS) {
+                            throw new IllegalStateException("Unexpected transfer rejection: " + result.getMessage());
+                        }
+                    }
+                }
+                return new long[]{deposited, withdrawn};
+            }));
+        }
+
+        long deposited = 0L;
+        long withdrawn = 0L;
+        for (Future<long[]> result : results) {
+            long[] totals = result.get(5, TimeUnit.MINUTES); // A deadlock surfaces as a TimeoutException
+            deposited += totals[0];
+            withdrawn += totals[1];
+        }
+        long elapsedNanos = System.nanoTime() - start;
+        pool.shutdown();
+
+        long expectedTotal = openingTotal + deposited - withdrawn;
+        long actualTotal = engine.totalBalance();
+        long operations = (long) threads * operationsPerThread;
+        System.out.printf("%d threads, %d operations in %.2f s (%.0f ops/s)%n",
+                threads, operations, elapsedNanos / 1e9, operations / (elapsedNanos / 1e9));
+        System.out.println("Expected total: $" + Money.format(expectedTotal));
+        System.out.println("Actual total:   $" + Money.format(actualTotal));
+        if (expectedTotal != actualTotal) {
+            System.out.println("FAILED: money was not conserved.");
+            System.exit(1);
+        }
+        System.out.println("OK: money conserved.");
+    }
+}
@@ -0,0 +1,326 @@
+import ledger.Account;
+import ledger.AccountStore;
+import ledger.AccountType;
+import ledger.ColumnarAccountStore;
+import ledger.InterestPosting;
+import ledger.LatencyHistogram;
+import ledger.LedgerEngine;
+import ledger.LedgerJournal;
+import ledger.LedgerResult;
+import ledger.MapAccountStore;
+import ledger.Money;
+import ledger.Workload;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Path;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Drives a {@link LedgerEngine} directly, with no console, HTTP or journal in the way, and reports
+ * throughput, latency percentiles, outcomes and heap usage, so two versions of the ledger can be compared
+ * on exactly the same work.
+ *
+ * By default the work is a {@link Workload}: {@code accounts} accounts, {@code savings} of them SAVINGS,
+ * then {@code operations} deposits, withdrawals and transfers in the proportions {@code deposit} and
+ * {@code withdraw} percent (transfers take the rest), over accounts picked with Zipf skew {@code skew}.
+ * The operations are generated before the clock starts; thread {@code t} of {@code threads} runs every
+ * operation whose index leaves remainder {@code t}. The same seed gives the same operations, and with one
+ * thread the same final balances, so the checksum printed at the end must match between versions that
+ * should behave alike.
+ *
+ * With {@code journal=<file>} it instead replays a journal recorded by {@code BankingConsoleApp}, in
+ * order on one thread, against fresh accounts. Take a copy of {@code ledger.journal} while the application
+ * runs, since a checkpoint empties it. Accounts the journal uses but did not open (they were opened before
+ * its last checkpoint) are opened on first use with a large CHECKING balance, so closing them diverges.
+ * A divergence is a recorded operation that the engine now rejects.
+ *
+ * Run with: {@code java WorkloadReplay [key=value ...]}, keys and defaults: accounts=100000
+ * operations=1000000 threads=1 skew=0.99 savings=0.3 deposit=30 withdraw=30 seed=42 store=map
+ * (or columnar), journal=<file>. Size the heap with {@code -Xmx} as for the application, and use enough
+ * operations that JIT compilation is a small part of the run.
+ */
+public class WorkloadReplay {
+
+    private static final long REPLAY_OPENING_BALANCE = 1_000_000_000_00L; // For accounts opened before the journal
+
+    private static final byte DEPOSIT = 0;
+    private static final byte WITHDRAW = 1;
+    private static final byte TRANSFER = 2;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (equals <= 0) {
+                throw new IllegalArgumentException("Expected key=value, got: " + arg);
+            }
+            options.put(arg.substring(0, equals), arg.substring(equals + 1));
+        }
+        String store = options.getOrDefault("store", "map");
+        LedgerEngine engine = new LedgerEngine(store.equals("columnar") ? new ColumnarAccountStore() : new MapAccountStore());
+
+        System.out.println("Store: " + store + ", " + Runtime.getRuntime().availableProcessors() + " CPUs, max heap "
+                + Runtime.getRuntime().maxMemory() / (1024 * 1024) + " MiB");
+        Run run = options.containsKey("journal")
+                ? replayJournal(engine, Path.of(options.get("journal")))
+                : runWorkload(engine, options);
+        run.print(engine);
+    }
+
+    // --- Synthetic workload ---
+
+    private static Run runWorkload(LedgerEngine engine, Map<String, String> options) throws InterruptedException {
+        int accountCount = Integer.parseInt(options.getOrDefault("accounts", "100000"));
+        int operationCount = Integer.parseInt(options.getOrDefault("operations", "1000000"));
+        int threads = Integer.parseInt(options.getOrDefault("threads", "1"));
+        Workload workload = new Workload(accountCount,
+                Double.parseDouble(options.getOrDefault("savings", "0.3")),
+                Double.parseDouble(options.getOrDefault("skew", "0.99")),
+                Integer.parseInt(options.getOrDefault("deposit", "30")),
+                Integer.parseInt(options.getOrDefault("withdraw", "30")),
+                Long.parseLong(options.getOrDefault("seed", "42")));
+        System.out.printf(Locale.ROOT, "Workload: %,d accounts, %,d operations, %d threads, %s%n",
+                accountCount, operationCount, threads, options);
+
+        String[] accountNumbers = new String[accountCount];
+        for (int i = 0; i < accountCount; i++) {
+            LedgerResult result = engine.createAccount(workload.name(i), "Workload Street", String.format(Locale.ROOT, "555%07d", i),
+                    workload.openingBalance(i), workload.accountType(i));
+            if (!result.isSuccess()) {
+                throw new IllegalStateException("Could not open account " + i + ": " + result.getMessage());
+            }
+            accountNumbers[i] = result.getAccountNumber();
+        }
+
+        // Generated up front into flat arrays, so the run measures the ledger and not the generator
+        byte[] types = new byte[operationCount];
+        int[] sources = new int[operationCount];
+        int[] destinations = new int[operationCount];
+        long[] amounts = new long[operationCount];
+        for (int i = 0; i < operationCount; i++) {
+            Workload.Operation operation = workload.next();
+            types[i] = (byte) operation.getType().ordinal();
+            sources[i] = operation.getAccount();
+            destinations[i] = operation.getCounterparty();
+            amounts[i] = operation.getAmount();
+        }
+
+        Run run = new Run(threads);
+        run.finishSetup();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int first = t;
+            workers[t] = new Thread(() -> {
+                LatencyHistogram latencies = run.latencies[first];
+                long[] outcomes = run.outcomes[first];
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = first; i < operationCount; i += threads) {
+                    long began = System.nanoTime();
+                    LedgerResult result = switch (types[i]) {
+                        case DEPOSIT -> engine.deposit(accountNumbers[sources[i]], amounts[i]);
+                        case WITHDRAW -> engine.withdraw(accountNumbers[sources[i]], amounts[i]);
+                        case TRANSFER -> engine.transferFunds(accountNumbers[sources[i]], accountNumbers[destinations[i]], amounts[i]);
+                        default -> throw new IllegalStateException("Unknown operation type " + types[i]);
+                    };
+                    latencies.record(System.nanoTime() - began);
+                    outcomes[result.getStatus().ordinal()]++;
+                }
+            }, "workload-" + t);
+            workers[t].start();
+        }
+        run.startTimer();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        run.stopTimer();
+        run.accountNumbers = accountNumbers;
+        return run;
+    }
+
+    // --- Journal replay ---
+
+    private static Run replayJournal(LedgerEngine engine, Path journal) throws Exception {
+        List<LedgerJournal.Record> records = new ArrayList<>();
+        LedgerJournal.read(journal, records::add);
+        System.out.printf(Locale.ROOT, "Journal: %s, %,d records%n", journal, records.size());
+
+        Run run = new Run(1);
+        run.replay = true;
+        run.finishSetup();
+        Map<String, String> accountNumbers = new LinkedHashMap<>(); // Journal Account Number -> Replayed Account Number
+        LatencyHistogram latencies = run.latencies[0];
+        long[] outcomes = run.outcomes[0];
+        run.startTimer();
+        for (LedgerJournal.Record record : records) {
+            long began = System.nanoTime();
+            List<LedgerResult> results = switch (record.getType()) {
+                case OPEN_ACCOUNT -> {
+                    LedgerResult result = engine.createAccount(record.getName(), record.getAddress(), record.getPhoneNumber(),
+                            record.getAmount(), AccountType.valueOf(record.getAccountType()));
+                    if (result.isSuccess()) {
+                        accountNumbers.put(record.getAccountNumber(), result.getAccountNumber());
+                    }
+                    yield List.of(result);
+                }
+                case DEPOSIT -> List.of(engine.deposit(replayed(engine, accountNumbers, record.getAccountNumber(), run), record.getAmount()));
+                case WITHDRAWAL -> List.of(engine.withdraw(replayed(engine, accountNumbers, record.getAccountNumber(), run), record.getAmount()));
+                case TRANSFER -> List.of(engine.transferFunds(replayed(engine, accountNumbers, record.getAccountNumber(), run),
+                        replayed(engine, accountNumbers, record.getCounterpartyNumber(), run), record.getAmount()));
+                case CLOSE_ACCOUNT -> List.of(engine.closeAccount(replayed(engine, accountNumbers, record.getAccountNumber(), run)));
+                case INTEREST -> {
+                    String accountNumber = replayed(engine, accountNumbers, record.getAccountNumber(), run);
+                    int transactionCount = engine.accountActivity(accountNumber, 0L).getTransactionCount();
+                    yield engine.postInterest(YearMonth.parse(record.getName()),
+                            List.of(new InterestPosting(accountNumber, record.getAmount(), transactionCount)));
+                }
+            };
+            latencies.record(System.nanoTime() - began);
+            for (LedgerResult result : results) {
+                outcomes[result.getStatus().ordinal()]++;
+                if (!result.isSuccess()) {
+                    run.divergences++;
+                    if (run.divergences <= 10) {
+                        System.out.println("Diverged at LSN " + record.getLsn() + " (" + record.getType() + "): " + result.getMessage());
+                    }
+                }
+            }
+        }
+        run.stopTimer();
+        run.accountNumbers = accountNumbers.values().toArray(new String[0]);
+        return run;
+    }
+
+    private static String replayed(LedgerEngine engine, Map<String, String> accountNumbers, String journalAccountNumber, Run run) {
+        String accountNumber = accountNumbers.get(journalAccountNumber);
+        if (accountNumber == null) {
+            LedgerResult result = engine.createAccount("Replayed " + journalAccountNumber, "Replay Street", "000",
+                    REPLAY_OPENING_BALANCE, AccountType.CHECKING);
+            if (!result.isSuccess()) {
+                throw new IllegalStateException("Could not open account for " + journalAccountNumber + ": " + result.getMessage());
+            }
+            accountNumber = result.getAccountNumber();
+            accountNumbers.put(journalAccountNumber, accountNumber);
+            run.openedOnDemand++;
+        }
+        return accountNumber;
+    }
+
+    // --- Reporting ---
+
+    private static final class Run {
+        private final LatencyHistogram[] latencies;
+        private final long[][] outcomes; // [thread][LedgerResult.Status ordinal]
+        private String[] accountNumbers;
+        private boolean replay;
+        private long divergences;
+        private long openedOnDemand;
+        private long heapAfterSetup;
+        private long gcCountBefore;
+        private long gcMillisBefore;
+        private long startNanos;
+        private long elapsedNanos;
+
+        Run(int threads) {
+            latencies = new LatencyHistogram[threads];
+            outcomes = new long[threads][LedgerResult.Status.values().length];
+            for (int t = 0; t < threads; t++) {
+                latencies[t] = new LatencyHistogram();
+            }
+        }
+
+        // Setup is done: measure what it left on the heap and start counting GC from here
+        void finishSetup() {
+            heapAfterSetup = usedHeapAfterGc();
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                pool.resetPeakUsage();
+            }
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                gcCountBefore += Math.max(0L, collector.getCollectionCount());
+                gcMillisBefore += Math.max(0L, collector.getCollectionTime());
+            }
+        }
+
+        void startTimer() {
+            startNanos = System.nanoTime();
+        }
+
+        void stopTimer() {
+            elapsedNanos = System.nanoTime() - startNanos;
+        }
+
+        void print(LedgerEngine engine) {
+            long gcCount = -gcCountBefore;
+            long gcMillis = -gcMillisBefore;
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                gcCount += Math.max(0L, collector.getCollectionCount());
+                gcMillis += Math.max(0L, collector.getCollectionTime());
+            }
+            long peakHeap = 0L;
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) {
+                    peakHeap += pool.getPeakUsage().getUsed();
+                }
+            }
+
+            LatencyHistogram.Snapshot total = LatencyHistogram.Snapshot.EMPTY;
+            for (LatencyHistogram histogram : latencies) {
+                total = total.merge(histogram.snapshot());
+            }
+            double seconds = elapsedNanos / 1e9;
+            System.out.println();
+            System.out.printf(Locale.ROOT, "Operations: %,d in %.2f s, %,.0f ops/s%n", total.getCount(), seconds, total.getCount() / seconds);
+            System.out.printf(Locale.ROOT, "Latency us: mean %.2f, p50 %.2f, p90 %.2f, p99 %.2f, p99.9 %.2f, max %.2f%n",
+                    total.getMeanNanos() / 1e3, total.getValueAtPercentile(50) / 1e3, total.getValueAtPercentile(90) / 1e3,
+                    total.getValueAtPercentile(99) / 1e3, total.getValueAtPercentile(99.9) / 1e3, total.getMaxNanos() / 1e3);
+            System.out.print("Outcomes:");
+            for (LedgerResult.Status status : LedgerResult.Status.values()) {
+                long count = 0L;
+                for (long[] threadOutcomes : outcomes) {
+                    count += threadOutcomes[status.ordinal()];
+                }
+                if (count > 0) {
+                    System.out.printf(Locale.ROOT, " %s %,d", status, count);
+                }
+            }
+            System.out.println();
+            if (replay) {
+                System.out.printf(Locale.ROOT, "Divergences: %,d; accounts opened before the journal: %,d%n", divergences, openedOnDemand);
+            }
+            System.out.printf(Locale.ROOT, "Heap MiB: %.1f after setup, %.1f peak during the run, %.1f after it; %,d GCs taking %,d ms%n",
+                    heapAfterSetup / 1048576.0, peakHeap / 1048576.0, usedHeapAfterGc() / 1048576.0, gcCount, gcMillis);
+
+            long checksum = 1L;
+            for (String accountNumber : accountNumbers) {
+                Account account = engine.findAccount(accountNumber);
+                checksum = 31 * checksum + (account == null ? AccountStore.NO_ACCOUNT : account.getBalance());
+            }
+            System.out.printf(Locale.ROOT, "Total balance: %s, balance checksum: %016x%s%n", Money.format(engine.totalBalance()), checksum,
+                    latencies.length == 1 ? "" : " (differs between runs with more than one thread)");
+            System.out.println();
+            System.out.print(engine.getMetrics());
+        }
+    }
+
+    private static long usedHeapAfterGc() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,99 @@
+package ledger.bench;
+
+import ledger.Account;
+import ledger.LedgerEngine;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finding accounts by phone number and by name prefix through the engine's secondary indexes, against a
+ * linear scan over every account that normalizes the same way. The indexed lookups should stay flat as
+ * {@code accountCount} grows; the scans grow with it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccountSearchBenchmark {
+
+    private static final int LIMIT = 20;
+
+    @Param({"1000", "100000", "1000000"})
+    public int accountCount;
+
+    private LedgerEngine engine;
+    private List<Account> accounts;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void buildEngine() {
+        LedgerFixture fixture = new LedgerFixture(accountCount, 0);
+        engine = fixture.newEngine();
+        accounts = new ArrayList<>(accountCount);
+        for (String accountNumber : fixture.accountNumbers) {
+            accounts.add(engine.findAccount(accountNumber));
+        }
+    }
+
+    private int nextAccount() {
+        cursor = (cursor + 7919) % accountCount; // A prime stride, so lookups do not walk the index in order
+        return cursor;
+    }
+
+    @Benchmark
+    public List<Account> phoneIndexed() {
+        return engine.findAccountsByPhoneNumber(LedgerFixture.phoneNumber(nextAccount()));
+    }
+
+    @Benchmark
+    public List<Account> phoneScan() {
+        String phone = digits(LedgerFixture.phoneNumber(nextAccount()));
+        List<Account> found = new ArrayList<>();
+        for (Account account : accounts) {
+            if (digits(account.getPhoneNumber()).equals(phone)) {
+                found.add(account);
+            }
+        }
+        return found;
+    }
+
+    // "Customer 1234" also matches 12340 to 12349 and so on, up to the limit
+    @Benchmark
+    public List<Account> namePrefixIndexed() {
+        return engine.findAccountsByNamePrefix(Integer.toString(nextAccount()), LIMIT);
+    }
+
+    @Benchmark
+    public List<Account> namePrefixScan() {
+        String prefix = Integer.toString(nextAccount());
+        String laterWord = " " + prefix;
+        List<Account> found = new ArrayList<>();
+        for (Account account : accounts) {
+            String name = account.getName().toLowerCase(Locale.ROOT);
+            if (name.startsWith(prefix) || name.contains(laterWord)) {
+                found.add(account);
+                if (found.size() >= LIMIT) {
+                    break;
+                }
+            }
+        }
+        return found;
+    }
+
+    private static String digits(String phoneNumber) {
+        StringBuilder digits = new StringBuilder(phoneNumber.length());
+        for (int i = 0; i < phoneNumber.length(); i++) {
+            char c = phoneNumber.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits.append(c);
+            }
+        }
+        return digits.toString();
+    }
+}
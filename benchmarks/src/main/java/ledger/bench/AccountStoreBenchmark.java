@@ -0,0 +1,83 @@
+package ledger.bench;
+
+import ledger.Account;
+import ledger.AccountStore;
+import ledger.AccountType;
+import ledger.ColumnarAccountStore;
+import ledger.MapAccountStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups and balance updates by account number in the {@link MapAccountStore} and the
+ * {@link ColumnarAccountStore}, over {@code accountCount} accounts numbered as {@link ledger.LedgerIds}
+ * numbers them, visited in an order that defeats the CPU caches. The setup also prints how much heap
+ * each store retains per account, names, addresses and phone numbers included, measured after a full GC.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class AccountStoreBenchmark {
+
+    @Param({"map", "columnar"})
+    public String store;
+
+    @Param({"100000", "1000000"})
+    public int accountCount;
+
+    private AccountStore accounts;
+    private String[] accountNumbers;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void fillStore() {
+        accountNumbers = new String[accountCount];
+        for (int i = 0; i < accountCount; i++) {
+            accountNumbers[i] = Long.toString(1_000_000_001L + i);
+        }
+        long before = usedHeapAfterGc();
+        accounts = store.equals("columnar") ? new ColumnarAccountStore() : new MapAccountStore();
+        for (int i = 0; i < accountCount; i++) {
+            // A fresh number string, as the store would get from a snapshot, rather than the one kept above
+            accounts.add(new Account(Long.toString(1_000_000_001L + i), "Customer " + i, i + " Bench Street", LedgerFixture.phoneNumber(i),
+                    LedgerFixture.OPENING_BALANCE, i % 2 == 0 ? AccountType.SAVINGS : AccountType.CHECKING));
+        }
+        long retained = usedHeapAfterGc() - before;
+        System.out.printf("%n%s store: %,d bytes for %,d accounts, %.1f bytes per account%n", store, retained, accountCount, (double) retained / accountCount);
+    }
+
+    private static long usedHeapAfterGc() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    private String nextAccount() {
+        cursor = (cursor + 7919) % accountCount; // A prime stride, so lookups do not walk the store in order
+        return accountNumbers[cursor];
+    }
+
+    @Benchmark
+    public long getBalance() {
+        return accounts.getBalance(nextAccount());
+    }
+
+    @Benchmark
+    public Account get() {
+        return accounts.get(nextAccount());
+    }
+
+    @Benchmark
+    public void setBalance() {
+        String accountNumber = nextAccount();
+        accounts.setBalance(accountNumber, accounts.getBalance(accountNumber) + 1);
+    }
+}
@@ -0,0 +1,88 @@
+package ledger.bench;
+
+import ledger.AccountType;
+import ledger.LedgerEngine;
+import ledger.LedgerJournal;
+import ledger.LedgerResult;
+import ledger.LedgerStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Durable deposits per second from 8 threads, each on its own account, against a journal on disk.
+ * {@code inline} forces every record on the calling thread under the ledger lock, as the journal did
+ * before the commit pipeline; the numbers are the pipeline's batch size, where 1 is one fsync per record
+ * through the sequencer and larger sizes let concurrent deposits share an fsync. Every deposit is on
+ * disk before it returns in all of them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+@Threads(8)
+public class CommitPipelineBenchmark {
+
+    private static final int THREADS = 8;
+
+    @Param({"inline", "1", "16", "256"})
+    public String batchSize;
+
+    private final PrintStream console = System.out;
+    private final AtomicInteger nextAccount = new AtomicInteger();
+    private Path directory;
+    private LedgerEngine engine;
+    private LedgerStore store;
+    private String[] accountNumbers;
+
+    @State(Scope.Thread)
+    public static class Depositor {
+        private String accountNumber;
+
+        @Setup(Level.Trial)
+        public void pickAccount(CommitPipelineBenchmark benchmark) {
+            accountNumber = benchmark.accountNumbers[benchmark.nextAccount.getAndIncrement() % THREADS];
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void openStore() throws IOException {
+        System.setOut(new PrintStream(OutputStream.nullOutputStream())); // The store reports loading and saving
+        directory = Files.createTempDirectory("ledger-commit-bench");
+        LedgerJournal.Settings settings = batchSize.equals("inline") ? LedgerJournal.Settings.relaxed(1, 0L)
+                : LedgerJournal.Settings.durable(Integer.parseInt(batchSize), 0L);
+        engine = new LedgerEngine();
+        store = new LedgerStore(engine, directory.resolve("accounts.dat").toString(), directory.resolve("transactions.dat").toString(),
+                directory.resolve("transactions").toString(), directory.resolve("ledger.journal").toString(), directory.resolve("ids.dat").toString(),
+                settings);
+        store.load();
+        accountNumbers = new String[THREADS];
+        for (int i = 0; i < THREADS; i++) {
+            accountNumbers[i] = engine.createAccount("Depositor " + i, "1 Bench Street", LedgerFixture.phoneNumber(i), 0L, AccountType.CHECKING).getAccountNumber();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void closeStore() throws IOException {
+        store.close();
+        System.setOut(console);
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public LedgerResult deposit(Depositor depositor) {
+        return engine.deposit(depositor.accountNumber, 1L);
+    }
+}
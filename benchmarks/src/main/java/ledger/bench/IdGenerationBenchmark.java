@@ -0,0 +1,68 @@
+package ledger.bench;
+
+import ledger.LedgerIds;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Cost of one transaction ID: the truncated random UUID used before {@link LedgerIds}, against the
+ * sequence kept in memory and the sequence with its high-water mark file, which forces the file to disk
+ * once every {@link LedgerIds#TRANSACTION_BLOCK_SIZE} IDs.
+ *
+ * The UUID approach also had only 32 bits of randomness, so the chance of a repeated ID passed one half
+ * after about 77,000 IDs; the sequences cannot repeat.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IdGenerationBenchmark {
+
+    private final LedgerIds inMemory = LedgerIds.inMemory();
+    private Path directory;
+    private LedgerIds persisted;
+
+    @Setup(Level.Trial)
+    public void openPersisted() throws IOException {
+        directory = Files.createTempDirectory("ledger-ids-bench");
+        persisted = LedgerIds.open(directory.resolve("ids.dat"));
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public String truncatedUuid() {
+        return UUID.randomUUID().toString().substring(0, 8).toUpperCase(Locale.ROOT);
+    }
+
+    @Benchmark
+    public String sequence() {
+        return inMemory.nextTransactionId();
+    }
+
+    @Benchmark
+    public String persistedSequence() {
+        return persisted.nextTransactionId();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String persistedSequenceContended() {
+        return persisted.nextTransactionId();
+    }
+}
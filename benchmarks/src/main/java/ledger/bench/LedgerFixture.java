@@ -0,0 +1,78 @@
+package ledger.bench;
+
+import ledger.Account;
+import ledger.AccountType;
+import ledger.LedgerEngine;
+import ledger.Transaction;
+import ledger.TransactionType;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds ledgers of a given size directly through {@link LedgerEngine#restore}, which is much faster than
+ * driving millions of operations through the public API. Even-numbered accounts are SAVINGS, odd ones
+ * CHECKING, and the history is spread round-robin over all accounts. Account {@code i} is named
+ * "Customer i" and has a phone number of its own.
+ */
+final class LedgerFixture {
+
+    static final long OPENING_BALANCE = 1_000_000_00L;
+    // Old enough that none of the history counts towards this month's SAVINGS withdrawal limit
+    static final long HISTORY_TIMESTAMP = System.currentTimeMillis() - 60L * 24 * 60 * 60 * 1000;
+
+    final String[] accountNumbers;
+    private final List<Transaction> history;
+
+    LedgerFixture(int accountCount, int historySize) {
+        accountNumbers = new String[accountCount];
+        for (int i = 0; i < accountCount; i++) {
+            accountNumbers[i] = accountNumber(i);
+        }
+
+        history = new ArrayList<>(historySize);
+        for (int i = 0; i < historySize; i++) {
+            history.add(new Transaction(transactionId(i), HISTORY_TIMESTAMP, accountNumbers[i % accountCount],
+                    TransactionType.DEPOSIT, 100L, "Deposit"));
+        }
+    }
+
+    /**
+     * A fresh engine holding this fixture's accounts, each with {@link #OPENING_BALANCE}, and its history.
+     */
+    LedgerEngine newEngine() {
+        LedgerEngine engine = new LedgerEngine();
+        populate(engine);
+        return engine;
+    }
+
+    /**
+     * Replaces the engine's state with this fixture's, writing the history into its current transaction store.
+     */
+    void populate(LedgerEngine engine) {
+        Map<String, Account> accounts = new HashMap<>(accountNumbers.length * 2);
+        for (int i = 0; i < accountNumbers.length; i++) {
+            AccountType type = i % 2 == 0 ? AccountType.SAVINGS : AccountType.CHECKING;
+            accounts.put(accountNumbers[i], new Account(accountNumbers[i], "Customer " + i, "1 Bench Street", phoneNumber(i), OPENING_BALANCE, type));
+        }
+        engine.restore(accounts, history);
+    }
+
+    List<Transaction> history() {
+        return history;
+    }
+
+    static String accountNumber(int i) {
+        return String.format("A%07X", i);
+    }
+
+    static String phoneNumber(int i) {
+        return String.format("555-%07d", i);
+    }
+
+    private static String transactionId(int i) {
+        return String.format("T%07X", i);
+    }
+}
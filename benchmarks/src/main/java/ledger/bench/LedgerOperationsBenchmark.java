@@ -0,0 +1,87 @@
+package ledger.bench;
+
+import ledger.HistoryPage;
+import ledger.LedgerEngine;
+import ledger.LedgerResult;
+import ledger.TransactionStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of the ledger operations as the number of accounts and the size of the history grow. With the
+ * per-account index and the monthly withdrawal counters, none of these should scale with
+ * {@code historySize}; a history page costs the same however many rows the account has.
+ *
+ * The engine is rebuilt before every iteration so rows added by one iteration do not pile up.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx4g"})
+public class LedgerOperationsBenchmark {
+
+    @Param({"1000", "100000"})
+    public int accountCount;
+
+    @Param({"1000", "100000", "10000000"})
+    public int historySize;
+
+    private LedgerFixture fixture;
+    private LedgerEngine engine;
+    private String savingsAtLimit;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void buildFixture() {
+        fixture = new LedgerFixture(accountCount, historySize);
+    }
+
+    @Setup(Level.Iteration)
+    public void resetEngine() {
+        engine = fixture.newEngine();
+        savingsAtLimit = fixture.accountNumbers[0]; // Account 0 is SAVINGS
+        for (int i = 0; i < LedgerEngine.SAVINGS_MONTHLY_WITHDRAWAL_LIMIT; i++) {
+            engine.withdraw(savingsAtLimit, 1L);
+        }
+    }
+
+    private String nextAccount() {
+        cursor = (cursor + 1) % accountCount;
+        return fixture.accountNumbers[cursor];
+    }
+
+    // Odd-numbered accounts are CHECKING, so they are never held back by the monthly limit
+    private String nextCheckingAccount() {
+        cursor = (cursor + 2) % accountCount | 1;
+        return fixture.accountNumbers[Math.min(cursor, accountCount - 1)];
+    }
+
+    @Benchmark
+    public LedgerResult deposit() {
+        return engine.deposit(nextAccount(), 1L);
+    }
+
+    @Benchmark
+    public LedgerResult withdrawChecking() {
+        return engine.withdraw(nextCheckingAccount(), 1L);
+    }
+
+    @Benchmark
+    public LedgerResult withdrawSavingsLimitReached() {
+        return engine.withdraw(savingsAtLimit, 1L);
+    }
+
+    @Benchmark
+    public LedgerResult transferFunds() {
+        String source = nextAccount();
+        return engine.transferFunds(source, nextAccount(), 1L);
+    }
+
+    @Benchmark
+    public HistoryPage transactionHistoryPage() {
+        return engine.transactionHistoryPage(nextAccount(), TransactionStore.NEWEST, 10);
+    }
+}
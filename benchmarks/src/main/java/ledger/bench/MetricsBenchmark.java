@@ -0,0 +1,58 @@
+package ledger.bench;
+
+import ledger.LatencyHistogram;
+import ledger.LedgerEngine;
+import ledger.LedgerMetrics;
+import ledger.LedgerResult;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What the instrumentation adds to every engine operation: a {@link LedgerMetrics#record} call, which is
+ * one clock read on top of the one taken at the start plus the histogram update. {@code nanoTime} is the
+ * cost of a clock read alone, for comparison.
+ *
+ * Run {@code LedgerOperationsBenchmark} as well to see the recording cost against whole operations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricsBenchmark {
+
+    private final LedgerMetrics metrics = new LedgerMetrics();
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private LedgerResult rejection;
+    private long value;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        rejection = new LedgerEngine().deposit("missing", 1L); // ACCOUNT_NOT_FOUND
+    }
+
+    @Benchmark
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+
+    // Spreads values over many buckets, as real latencies would
+    @Benchmark
+    public void histogramRecord() {
+        value = (value * 6364136223846793005L + 1442695040888963407L);
+        histogram.record((value >>> 40) & 0xFFFFF);
+    }
+
+    @Benchmark
+    public LedgerResult metricsRecord() {
+        return metrics.record(LedgerMetrics.Operation.DEPOSIT, System.nanoTime(), rejection);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public LedgerResult metricsRecordContended() {
+        return metrics.record(LedgerMetrics.Operation.DEPOSIT, System.nanoTime(), rejection);
+    }
+}
@@ -0,0 +1,70 @@
+package ledger.bench;
+
+import ledger.LedgerEngine;
+import ledger.MonthEndJob;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * One month-end run over the month holding the fixture's history, on pools of different sizes. Up to the
+ * number of cores, the time per run should fall close to 1/parallelism. Every run starts from a fresh
+ * engine, so it posts interest for the SAVINGS half of the accounts as well as writing every statement.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class MonthEndBenchmark {
+
+    @Param({"1", "2", "4", "8"})
+    public int parallelism;
+
+    @Param({"10000"})
+    public int accountCount;
+
+    private final ZoneId zone = ZoneId.systemDefault();
+    private LedgerFixture fixture;
+    private YearMonth period;
+    private ForkJoinPool pool;
+    private Path directory;
+    private MonthEndJob job;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        fixture = new LedgerFixture(accountCount, accountCount * 4);
+        period = YearMonth.from(Instant.ofEpochMilli(LedgerFixture.HISTORY_TIMESTAMP).atZone(zone));
+        pool = new ForkJoinPool(parallelism);
+        directory = Files.createTempDirectory("ledger-month-end-bench");
+    }
+
+    @Setup(Level.Invocation)
+    public void newEngine() {
+        LedgerEngine engine = fixture.newEngine();
+        job = new MonthEndJob(engine, directory, MonthEndJob.DEFAULT_INTEREST_BASIS_POINTS, zone);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        pool.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public MonthEndJob.Summary run() throws IOException {
+        return job.run(period, pool);
+    }
+}
@@ -0,0 +1,79 @@
+package ledger.bench;
+
+import ledger.LedgerEngine;
+import ledger.LedgerJournal;
+import ledger.LedgerStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Cost of a checkpoint (the accounts snapshot plus the transaction store's index) and of loading both
+ * again, for ledgers of different sizes. Loading reads only the index, so it should not grow with
+ * {@code historySize}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx4g"})
+public class PersistenceBenchmark {
+
+    @Param({"1000", "100000"})
+    public int accountCount;
+
+    @Param({"1000", "100000", "10000000"})
+    public int historySize;
+
+    private Path directory;
+    private LedgerStore saveStore;
+    private LedgerStore loadStore;
+    private PrintStream console;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream())); // The store reports every load and save
+
+        directory = Files.createTempDirectory("ledger-bench");
+        LedgerEngine engine = new LedgerEngine();
+        saveStore = newStore(engine);
+        saveStore.load(); // Attaches the empty transaction store the fixture is written into
+        new LedgerFixture(accountCount, historySize).populate(engine);
+        saveStore.save(); // So the load benchmark has files to read
+        loadStore = newStore(new LedgerEngine());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        System.setOut(console);
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private LedgerStore newStore(LedgerEngine engine) {
+        return new LedgerStore(engine, directory.resolve("accounts.dat").toString(), directory.resolve("transactions.dat").toString(),
+                directory.resolve("transactions").toString(), directory.resolve("ledger.journal").toString(), directory.resolve("ids.dat").toString(),
+                LedgerJournal.Settings.durable(256, 0L));
+    }
+
+    @Benchmark
+    public void save() {
+        saveStore.save();
+    }
+
+    @Benchmark
+    public void load() throws IOException {
+        loadStore.load();
+        loadStore.close();
+    }
+}
@@ -0,0 +1,97 @@
+package ledger.bench;
+
+import ledger.MappedTransactionStore;
+import ledger.Transaction;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * The {@link MappedTransactionStore} against the Java serialization snapshot it replaced, writing and
+ * reading the same history. Saving the store appends the whole history to it and checkpoints it;
+ * loading opens it, which reads only the index. The size of the snapshot and the bytes the store's
+ * checkpoint wrote are printed once per trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx4g"})
+public class SnapshotFormatBenchmark {
+
+    @Param({"1000"})
+    public int accountCount;
+
+    @Param({"1000000"})
+    public int historySize;
+
+    private Path directory;
+    private Path serializedFile;
+    private MappedTransactionStore saveStore;
+    private Path loadDirectory;
+    private List<Transaction> history;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("ledger-bench");
+        serializedFile = directory.resolve("transactions.ser");
+        loadDirectory = directory.resolve("load");
+        history = new ArrayList<>(new LedgerFixture(accountCount, historySize).history());
+
+        saveJavaSerialization();
+        saveStore = MappedTransactionStore.open(directory.resolve("save"));
+        long storeBytes = saveMappedStore();
+        try (MappedTransactionStore store = MappedTransactionStore.open(loadDirectory)) {
+            history.forEach(store::append);
+            store.checkpoint(0L);
+        }
+        System.out.println();
+        System.out.println("Java serialization: " + Files.size(serializedFile) + " bytes, transaction store: " + storeBytes + " bytes");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        saveStore.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public void saveJavaSerialization() throws IOException {
+        try (ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(serializedFile)))) {
+            oos.writeObject(history);
+            oos.writeLong(0L);
+        }
+    }
+
+    @Benchmark
+    public Object loadJavaSerialization() throws IOException, ClassNotFoundException {
+        try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(serializedFile)))) {
+            return ois.readObject();
+        }
+    }
+
+    // Reuses the segment files from the start, as a store that is written again from scratch would
+    @Benchmark
+    public long saveMappedStore() throws IOException {
+        saveStore.clear();
+        history.forEach(saveStore::append);
+        return saveStore.checkpoint(0L);
+    }
+
+    @Benchmark
+    public long loadMappedStore() throws IOException {
+        try (MappedTransactionStore store = MappedTransactionStore.open(loadDirectory)) {
+            return store.size();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package ledger.bench;
+
+import ledger.Transaction;
+import ledger.TransactionType;
+import ledger.VelocityRules;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of checking a debit against three velocity rules, on its own and followed by recording it, for
+ * accounts whose windows already hold {@code debitsInWindow} debits. Neither should grow with the number
+ * of debits in the window, and {@code -prof gc} should show no allocation for {@code check}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VelocityRulesBenchmark {
+
+    private static final int ACCOUNTS = 10_000;
+
+    @Param({"1", "1000"})
+    public int debitsInWindow;
+
+    private VelocityRules rules;
+    private Transaction[] debits;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void fillWindows() {
+        // Limits high enough that nothing is declined, so every check runs through all three rules
+        rules = new VelocityRules(List.of(
+                new VelocityRules.Rule("rapid-transfers", VelocityRules.Scope.TRANSFER, 10, Integer.MAX_VALUE, -1L),
+                new VelocityRules.Rule("cash-hour", VelocityRules.Scope.WITHDRAW, 60, -1, Long.MAX_VALUE / 2),
+                new VelocityRules.Rule("debits-day", VelocityRules.Scope.ANY, 1440, Integer.MAX_VALUE, Long.MAX_VALUE / 2)));
+        long now = System.currentTimeMillis();
+        debits = new Transaction[ACCOUNTS];
+        for (int i = 0; i < ACCOUNTS; i++) {
+            String accountNumber = LedgerFixture.accountNumber(i);
+            for (int j = 0; j < debitsInWindow; j++) {
+                rules.record(new Transaction("T", now - j * 500L, accountNumber, TransactionType.WITHDRAWAL, 100L, "Withdrawal"));
+            }
+            debits[i] = new Transaction("T", now, accountNumber, TransactionType.WITHDRAWAL, 1L, "Withdrawal");
+        }
+    }
+
+    private Transaction nextDebit() {
+        cursor = (cursor + 1) % ACCOUNTS;
+        return debits[cursor];
+    }
+
+    @Benchmark
+    public VelocityRules.Rule check() {
+        Transaction debit = nextDebit();
+        return rules.check(debit.getAccountNumber(), TransactionType.WITHDRAWAL, debit.getAmount(), System.currentTimeMillis());
+    }
+
+    @Benchmark
+    public VelocityRules.Rule checkAndRecord() {
+        Transaction debit = nextDebit();
+        VelocityRules.Rule broken = rules.check(debit.getAccountNumber(), TransactionType.WITHDRAWAL, debit.getAmount(), System.currentTimeMillis());
+        rules.record(debit);
+        return broken;
+    }
+}
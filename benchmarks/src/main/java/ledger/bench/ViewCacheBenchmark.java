@@ -0,0 +1,88 @@
+package ledger.bench;
+
+import ledger.AccountViewCache;
+import ledger.HistoryPage;
+import ledger.LedgerEngine;
+import ledger.Transaction;
+import ledger.TransactionStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendering the first history page and the balance of a few hot accounts, each with
+ * {@code historyPerAccount} transactions, through the view cache and with it turned off. {@code cached}
+ * reads of an account that has not changed should cost a lookup whatever the page holds;
+ * {@code cachedWithDeposits} deposits to the account every {@code readsPerChange} reads, so the hit rate
+ * drops to match.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ViewCacheBenchmark {
+
+    private static final int HOT_ACCOUNTS = 16;
+    private static final int PAGE_SIZE = 10;
+
+    @Param({"100", "10000"})
+    public int historyPerAccount;
+
+    @Param({"10"})
+    public int readsPerChange;
+
+    private LedgerEngine cachedEngine;
+    private LedgerEngine uncachedEngine;
+    private String[] accountNumbers;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void buildEngines() {
+        LedgerFixture fixture = new LedgerFixture(HOT_ACCOUNTS, HOT_ACCOUNTS * historyPerAccount);
+        accountNumbers = fixture.accountNumbers;
+        cachedEngine = new LedgerEngine();
+        fixture.populate(cachedEngine);
+        uncachedEngine = new LedgerEngine();
+        uncachedEngine.setViewCache(new AccountViewCache(0, 0L));
+        fixture.populate(uncachedEngine);
+    }
+
+    private String nextAccount() {
+        cursor = (cursor + 1) % (HOT_ACCOUNTS * readsPerChange);
+        return accountNumbers[cursor % HOT_ACCOUNTS];
+    }
+
+    @Benchmark
+    public String cached() {
+        return read(cachedEngine, nextAccount());
+    }
+
+    @Benchmark
+    public String cachedWithDeposits() {
+        String accountNumber = nextAccount();
+        if (cursor < HOT_ACCOUNTS) { // Once per readsPerChange reads of each account
+            cachedEngine.deposit(accountNumber, 1L);
+        }
+        return read(cachedEngine, accountNumber);
+    }
+
+    @Benchmark
+    public String uncached() {
+        return read(uncachedEngine, nextAccount());
+    }
+
+    private static String read(LedgerEngine engine, String accountNumber) {
+        engine.balanceView(accountNumber, "console", account -> "Account balance: $" + account.getBalance());
+        return engine.historyPageView(accountNumber, TransactionStore.NEWEST, PAGE_SIZE, "console", ViewCacheBenchmark::render).getText();
+    }
+
+    private static String render(HistoryPage page) {
+        StringBuilder text = new StringBuilder(160 * page.getTransactions().size());
+        for (Transaction transaction : page.getTransactions()) {
+            text.append(transaction).append(System.lineSeparator());
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,60 @@
+package ledger;
+
+import java.io.Serializable;
+
+public class Account implements Serializable { // Implement Serializable
+    private static final long serialVersionUID = 2L; // Balance in cents; older accounts.dat files are read through SnapshotInputStream
+    private final String accountNumber;
+    private final String name;
+    private final String address;
+    private final String phoneNumber;
+    private volatile long balance; // In cents; written under the engine's stripe lock, read without it
+    private final AccountType accountType;
+
+    public Account(String accountNumber, String name, String address, String phoneNumber, long balance, AccountType accountType) {
+        this.accountNumber = accountNumber;
+        this.name = name;
+        this.address = address;
+        this.phoneNumber = phoneNumber;
+        this.balance = balance;
+        this.accountType = accountType;
+    }
+
+    public String getAccountNumber() {
+        return accountNumber;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public String getPhoneNumber() {
+        return phoneNumber;
+    }
+
+    public long getBalance() {
+        return balance;
+    }
+
+    void setBalance(long balance) {
+        this.balance = balance;
+    }
+
+    public AccountType getAccountType() {
+        return accountType;
+    }
+
+    @Override
+    public String toString() {
+        return "Account{" +
+               "accountNumber='" + accountNumber + '\'' +
+               ", name='" + name + '\'' +
+               ", balance=" + Money.format(balance) +
+               ", accountType=" + accountType +
+               '}';
+    }
+}
@@ -0,0 +1,42 @@
+package ledger;
+
+import java.util.List;
+
+/**
+ * An account and its transactions since some point in time, read together so the balance is the one
+ * those transactions led to. See {@link LedgerEngine#accountActivity}.
+ */
+public final class AccountActivity {
+
+    private final Account account;
+    private final int transactionCount;
+    private final List<Transaction> transactions;
+
+    AccountActivity(Account account, int transactionCount, List<Transaction> transactions) {
+        this.account = account;
+        this.transactionCount = transactionCount;
+        this.transactions = transactions;
+    }
+
+    /**
+     * A copy of the account at the time of the read.
+     */
+    public Account getAccount() {
+        return account;
+    }
+
+    /**
+     * Length of the account's whole history at the time of the read, to pass back in an
+     * {@link InterestPosting}.
+     */
+    public int getTransactionCount() {
+        return transactionCount;
+    }
+
+    /**
+     * Newest first, up to and including the last one at or after the requested time.
+     */
+    public List<Transaction> getTransactions() {
+        return transactions;
+    }
+}
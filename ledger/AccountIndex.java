@@ -0,0 +1,117 @@
+package ledger;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Secondary indexes over the open accounts, for finding them by phone number or by name.
+ *
+ * Phone numbers are normalized to their digits, so {@code (555) 010-2000} and {@code 555-010-2000} are
+ * the same key, and hashed to the accounts that have them. Names are lower-cased with runs of
+ * whitespace collapsed, and kept in a sorted set once for each word they start at, so a prefix of the
+ * whole name or of any later word ({@code "smi"} for "John Smith") is a range scan: O(log n) to find
+ * the first match and O(1) for each one after it.
+ *
+ * Both indexes are safe for concurrent use and are read without locks. {@link LedgerEngine} adds and
+ * removes accounts in the same step that puts them in or takes them out of its account map.
+ */
+public final class AccountIndex {
+
+    private static final char SEPARATOR = '\0'; // Between a name key and the account number; sorts before any name character
+
+    private final Map<String, Set<String>> byPhone = new ConcurrentHashMap<>(); // Normalized phone -> account numbers
+    private final NavigableSet<String> byName = new ConcurrentSkipListSet<>(); // Name key + SEPARATOR + account number
+
+    public void add(Account account) {
+        String phone = normalizePhoneNumber(account.getPhoneNumber());
+        if (!phone.isEmpty()) {
+            // Added inside compute, so a concurrent remove cannot drop the set between finding and adding to it
+            byPhone.compute(phone, (key, accountNumbers) -> {
+                if (accountNumbers == null) {
+                    accountNumbers = ConcurrentHashMap.newKeySet();
+                }
+                accountNumbers.add(account.getAccountNumber());
+                return accountNumbers;
+            });
+        }
+        for (String key : nameKeys(account.getName())) {
+            byName.add(key + SEPARATOR + account.getAccountNumber());
+        }
+    }
+
+    public void remove(Account account) {
+        String phone = normalizePhoneNumber(account.getPhoneNumber());
+        if (!phone.isEmpty()) {
+            byPhone.computeIfPresent(phone, (key, accountNumbers) -> {
+                accountNumbers.remove(account.getAccountNumber());
+                return accountNumbers.isEmpty() ? null : accountNumbers;
+            });
+        }
+        for (String key : nameKeys(account.getName())) {
+            byName.remove(key + SEPARATOR + account.getAccountNumber());
+        }
+    }
+
+    public void clear() {
+        byPhone.clear();
+        byName.clear();
+    }
+
+    /**
+     * Numbers of the accounts with this phone number, however it is punctuated.
+     */
+    public List<String> findByPhoneNumber(String phoneNumber) {
+        String phone = normalizePhoneNumber(phoneNumber);
+        Set<String> accountNumbers = phone.isEmpty() ? null : byPhone.get(phone);
+        return accountNumbers == null ? List.of() : new ArrayList<>(accountNumbers);
+    }
+
+    /**
+     * Numbers of up to {@code limit} accounts with a name, or a word in it, starting with
+     * {@code prefix}, ignoring case, in order of the matching part of the name.
+     */
+    public List<String> findByNamePrefix(String prefix, int limit) {
+        String key = normalizeName(prefix);
+        if (key.isEmpty()) {
+            return List.of();
+        }
+        Set<String> matches = new LinkedHashSet<>(); // An account can match on more than one word
+        for (String entry : byName.tailSet(key, true)) {
+            if (matches.size() >= limit || !entry.startsWith(key)) {
+                break;
+            }
+            matches.add(entry.substring(entry.lastIndexOf(SEPARATOR) + 1));
+        }
+        return new ArrayList<>(matches);
+    }
+
+    static String normalizePhoneNumber(String phoneNumber) {
+        StringBuilder digits = new StringBuilder(phoneNumber.length());
+        for (int i = 0; i < phoneNumber.length(); i++) {
+            char c = phoneNumber.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits.append(c);
+            }
+        }
+        return digits.toString();
+    }
+
+    static String normalizeName(String name) {
+        return String.join(" ", name.trim().toLowerCase(Locale.ROOT).split("\\s+"));
+    }
+
+    // The normalized name from each word on: "john smith" and "smith"
+    private static List<String> nameKeys(String name) {
+        String normalized = normalizeName(name);
+        if (normalized.isEmpty()) {
+            return List.of();
+        }
+        List<String> keys = new ArrayList<>(2);
+        keys.add(normalized);
+        for (int i = normalized.indexOf(' '); i >= 0; i = normalized.indexOf(' ', i + 1)) {
+            keys.add(normalized.substring(i + 1));
+        }
+        return keys;
+    }
+}
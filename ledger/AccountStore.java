@@ -0,0 +1,71 @@
+package ledger;
+
+import java.util.function.Consumer;
+
+/**
+ * Where a {@link LedgerEngine} keeps its open accounts.
+ *
+ * Stores must be safe for concurrent use: the engine writes an account only under that account's
+ * stripe, but reads balances and looks accounts up without any lock. The balance and type accessors
+ * are what every operation uses and should not allocate; {@link #get} and {@link #forEach} may build
+ * an {@link Account} for each call, so the engine only uses them for queries, snapshots and the rare
+ * changes that open or close an account. An {@code Account} a store hands out may be the stored one
+ * or a copy; the engine never changes a balance through it, only through {@link #setBalance}.
+ */
+public interface AccountStore {
+
+    /**
+     * What {@link #getBalance} returns for an account that is not in the store. Balances are never
+     * this low.
+     */
+    long NO_ACCOUNT = Long.MIN_VALUE;
+
+    /**
+     * The account, or null if there is none with this number.
+     */
+    Account get(String accountNumber);
+
+    boolean contains(String accountNumber);
+
+    /**
+     * The account's balance in cents, or {@link #NO_ACCOUNT}.
+     */
+    long getBalance(String accountNumber);
+
+    /**
+     * The account's type, or null if there is no such account.
+     */
+    AccountType getAccountType(String accountNumber);
+
+    /**
+     * Sets the balance of an account in the store; does nothing if there is no such account.
+     */
+    void setBalance(String accountNumber, long balance);
+
+    /**
+     * Adds the account unless its number is already in use.
+     *
+     * @return whether it was added
+     */
+    boolean add(Account account);
+
+    /**
+     * Adds the account, replacing any with the same number, and returns the one replaced or null.
+     */
+    Account put(Account account);
+
+    /**
+     * Removes the account and returns it, or null if there was none.
+     */
+    Account remove(String accountNumber);
+
+    int size();
+
+    /**
+     * Visits every account, without blocking changes for long: accounts added or removed meanwhile may
+     * or may not be visited, as with a {@link java.util.concurrent.ConcurrentHashMap}.
+     */
+    void forEach(Consumer<Account> action);
+
+    void clear();
+}
@@ -0,0 +1,8 @@
+package ledger;
+
+import java.io.Serializable;
+
+public enum AccountType implements Serializable { // Implement Serializable
+    SAVINGS,
+    CHECKING
+}
@@ -0,0 +1,287 @@
+package ledger;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded cache of rendered per-account views: the text of a balance or of one page of history, as a
+ * console or an HTTP response shows it, so that hot accounts are not re-read and re-rendered on every
+ * request. {@link LedgerEngine#balanceView} and {@link LedgerEngine#historyPageView} read through it.
+ *
+ * Views are kept in least-recently-used order and evicted from the old end once there are more than
+ * {@code maxEntries} of them or their estimated size passes {@code maxBytes}. Every change the engine
+ * commits invalidates the views of exactly the accounts it names, after the change is applied; restores
+ * and compaction clear the whole cache.
+ *
+ * A view rendered while a change is being applied must not outlive the invalidation. Each account hashes
+ * to one of {@link #VERSION_SLOTS} version counters that every invalidation of it increments; a reader
+ * takes the version before it reads the ledger and {@link #put} drops the view if the version has moved
+ * since. Two accounts sharing a slot only costs a missed fill, never a stale view.
+ *
+ * Safe for concurrent use. Every call holds one short lock; rendering happens outside it.
+ */
+public final class AccountViewCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 10_000;
+    public static final long DEFAULT_MAX_BYTES = 16L * 1024 * 1024;
+
+    private static final int VERSION_SLOTS = 1024;
+    private static final long ENTRY_OVERHEAD_BYTES = 160L; // Map entry, links, key and view objects
+    private static final long TRANSACTION_BYTES = 120L; // A transaction a cached page holds, with its strings
+
+    /**
+     * A rendered view, and for a history page the page it was rendered from, for its cursor.
+     */
+    public static final class View {
+        private final String text;
+        private final HistoryPage page; // Null for a balance
+
+        View(String text, HistoryPage page) {
+            this.text = text;
+            this.page = page;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public HistoryPage getPage() {
+            return page;
+        }
+
+        private long estimatedBytes(Key key) {
+            long bytes = ENTRY_OVERHEAD_BYTES + 2L * (key.accountNumber.length() + key.format.length() + text.length());
+            return page == null ? bytes : bytes + TRANSACTION_BYTES * page.getTransactions().size();
+        }
+    }
+
+    private static final class Key {
+        private final String accountNumber;
+        private final String format; // Whatever the caller renders with, such as "console" or "json"
+        private final long cursor; // BALANCE for a balance view
+        private final int pageSize;
+
+        private Key(String accountNumber, String format, long cursor, int pageSize) {
+            this.accountNumber = accountNumber;
+            this.format = format;
+            this.cursor = cursor;
+            this.pageSize = pageSize;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key key && cursor == key.cursor && pageSize == key.pageSize
+                    && accountNumber.equals(key.accountNumber) && format.equals(key.format);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * accountNumber.hashCode() + format.hashCode()) + Long.hashCode(cursor) + pageSize;
+        }
+    }
+
+    private static final long BALANCE = -1L; // Never a history cursor
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<Key, View> views = new LinkedHashMap<>(16, 0.75f, true); // Least recently used first
+    private final Map<String, List<Key>> keysByAccount = new HashMap<>(); // For invalidating one account's views
+    private final long[] versions = new long[VERSION_SLOTS];
+    private long bytes;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * @param maxEntries views kept at most; 0 disables the cache
+     * @param maxBytes   estimated size of the views kept at most
+     */
+    public AccountViewCache(int maxEntries, long maxBytes) {
+        if (maxEntries < 0 || maxBytes < 0) {
+            throw new IllegalArgumentException("Cache limits cannot be negative");
+        }
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    public static AccountViewCache withDefaults() {
+        return new AccountViewCache(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES);
+    }
+
+    public boolean isEnabled() {
+        return maxEntries > 0 && maxBytes > 0;
+    }
+
+    /**
+     * The cached balance view of the account in {@code format}, or null on a miss.
+     */
+    public View getBalance(String accountNumber, String format) {
+        return get(new Key(accountNumber, format, BALANCE, 0));
+    }
+
+    /**
+     * The cached history page of the account starting at {@code cursor}, or null on a miss.
+     */
+    public View getHistoryPage(String accountNumber, String format, long cursor, int pageSize) {
+        return get(new Key(accountNumber, format, cursor, pageSize));
+    }
+
+    /**
+     * The account's version, to take before reading what a view is rendered from and hand to
+     * {@link #putBalance} or {@link #putHistoryPage}.
+     */
+    public long version(String accountNumber) {
+        lock.lock();
+        try {
+            return versions[slot(accountNumber)];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void putBalance(String accountNumber, String format, long version, String text) {
+        put(new Key(accountNumber, format, BALANCE, 0), version, new View(text, null));
+    }
+
+    public void putHistoryPage(String accountNumber, String format, long cursor, int pageSize, long version, View view) {
+        put(new Key(accountNumber, format, cursor, pageSize), version, view);
+    }
+
+    /**
+     * Drops every view of the account. Call after the change to it is applied.
+     */
+    public void invalidate(String accountNumber) {
+        lock.lock();
+        try {
+            versions[slot(accountNumber)]++;
+            List<Key> keys = keysByAccount.remove(accountNumber);
+            if (keys != null) {
+                for (Key key : keys) {
+                    View view = views.remove(key);
+                    if (view != null) {
+                        bytes -= view.estimatedBytes(key);
+                    }
+                }
+                invalidations.add(keys.size());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops every view, for when the whole ledger is replaced.
+     */
+    public void clear() {
+        lock.lock();
+        try {
+            for (int i = 0; i < versions.length; i++) {
+                versions[i]++;
+            }
+            invalidations.add(views.size());
+            views.clear();
+            keysByAccount.clear();
+            bytes = 0L;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    private View get(Key key) {
+        if (!isEnabled()) {
+            return null;
+        }
+        View view;
+        lock.lock();
+        try {
+            view = views.get(key); // Moves it to the recently used end
+        } finally {
+            lock.unlock();
+        }
+        (view != null ? hits : misses).increment();
+        return view;
+    }
+
+    private void put(Key key, long version, View view) {
+        long size = view.estimatedBytes(key);
+        if (!isEnabled() || size > maxBytes) {
+            return;
+        }
+        lock.lock();
+        try {
+            if (versions[slot(key.accountNumber)] != version) {
+                return; // Invalidated since the reader took the version, so the view may be stale
+            }
+            View replaced = views.put(key, view);
+            if (replaced != null) {
+                bytes -= replaced.estimatedBytes(key);
+            } else {
+                keysByAccount.computeIfAbsent(key.accountNumber, accountNumber -> new ArrayList<>(2)).add(key);
+            }
+            bytes += size;
+            Iterator<Map.Entry<Key, View>> eldest = views.entrySet().iterator();
+            while (views.size() > maxEntries || bytes > maxBytes) {
+                Map.Entry<Key, View> entry = eldest.next();
+                Key evicted = entry.getKey();
+                bytes -= entry.getValue().estimatedBytes(evicted);
+                eldest.remove();
+                List<Key> keys = keysByAccount.get(evicted.accountNumber);
+                keys.remove(evicted);
+                if (keys.isEmpty()) {
+                    keysByAccount.remove(evicted.accountNumber);
+                }
+                evictions.increment();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static int slot(String accountNumber) {
+        int hash = accountNumber.hashCode();
+        return (hash ^ (hash >>> 16)) & (VERSION_SLOTS - 1);
+    }
+
+    /**
+     * Hit, miss, eviction and invalidation counts with the current size.
+     */
+    @Override
+    public String toString() {
+        if (!isEnabled()) {
+            return "View cache disabled." + System.lineSeparator();
+        }
+        int entries;
+        long size;
+        lock.lock();
+        try {
+            entries = views.size();
+            size = bytes;
+        } finally {
+            lock.unlock();
+        }
+        long hitCount = getHits();
+        long lookups = hitCount + getMisses();
+        return String.format(Locale.ROOT, "View cache: %d hits, %d misses (%.1f%% hit rate), %d evictions, %d invalidations; %d of %d views, ~%d of %d KiB%n",
+                hitCount, getMisses(), lookups == 0 ? 0.0 : 100.0 * hitCount / lookups, getEvictions(), getInvalidations(),
+                entries, maxEntries, size / 1024, maxBytes / 1024);
+    }
+}
@@ -0,0 +1,166 @@
+package ledger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Streams a file of ledger commands through a {@link LedgerEngine} without any interaction.
+ *
+ * One command per line, comma separated; blank lines and lines starting with {@code #} are skipped:
+ * <pre>
+ * create,&lt;name&gt;,&lt;address&gt;,&lt;phone&gt;,&lt;initial deposit&gt;,&lt;SAVINGS|CHECKING&gt;[,&lt;label&gt;]
+ * deposit,&lt;account&gt;,&lt;amount&gt;
+ * withdraw,&lt;account&gt;,&lt;amount&gt;
+ * transfer,&lt;source account&gt;,&lt;destination account&gt;,&lt;amount&gt;
+ * close,&lt;account&gt;
+ * </pre>
+ * Amounts are decimal with at most two places. An account can be given as {@code @label} to refer to an
+ * account created earlier in the same file, since its number is only known once it has been created.
+ * Every command goes through the same engine operation as the console, so the same rules apply.
+ */
+public final class BatchRunner {
+
+    public static final class Summary {
+        private final String source;
+        private final long accepted;
+        private final long malformed;
+        private final Map<LedgerResult.Status, Long> rejected;
+        private final long elapsedNanos;
+
+        private Summary(String source, long accepted, long malformed, Map<LedgerResult.Status, Long> rejected, long elapsedNanos) {
+            this.source = source;
+            this.accepted = accepted;
+            this.malformed = malformed;
+            this.rejected = rejected;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public long getAccepted() {
+            return accepted;
+        }
+
+        public long getRejected() {
+            long total = malformed;
+            for (long count : rejected.values()) {
+                total += count;
+            }
+            return total;
+        }
+
+        public void print(PrintStream out) {
+            long processed = accepted + getRejected();
+            double seconds = elapsedNanos / 1e9;
+            out.println("Batch complete: " + source);
+            out.println("  Commands processed: " + processed);
+            out.println("  Accepted: " + accepted);
+            out.println("  Rejected: " + getRejected());
+            if (malformed > 0) {
+                out.println("    MALFORMED: " + malformed);
+            }
+            rejected.forEach((status, count) -> out.println("    " + status + ": " + count));
+            out.printf(Locale.ROOT, "  Elapsed: %.3f s (%.0f commands/s)%n", seconds, seconds > 0 ? processed / seconds : 0.0);
+        }
+    }
+
+    private final LedgerEngine engine;
+    private final Map<String, String> labels = new HashMap<>(); // @label -> account number created by this batch
+
+    public BatchRunner(LedgerEngine engine) {
+        this.engine = engine;
+    }
+
+    public Summary run(Path file) throws IOException {
+        long accepted = 0;
+        long malformed = 0;
+        Map<LedgerResult.Status, Long> rejected = new EnumMap<>(LedgerResult.Status.class);
+
+        long start = System.nanoTime();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank() || line.startsWith("#")) {
+                    continue;
+                }
+
+                LedgerResult result;
+                try {
+                    result = execute(line.split(",", -1));
+                } catch (IllegalArgumentException e) { // Includes NumberFormatException from amounts
+                    malformed++;
+                    continue;
+                }
+
+                if (result.isSuccess()) {
+                    accepted++;
+                } else {
+                    rejected.merge(result.getStatus(), 1L, Long::sum);
+                }
+            }
+        }
+        return new Summary(file.toString(), accepted, malformed, rejected, System.nanoTime() - start);
+    }
+
+    private LedgerResult execute(String[] fields) {
+        String command = fields[0].trim().toLowerCase(Locale.ROOT);
+        switch (command) {
+            case "create" -> {
+                requireFields(fields, 6, 7);
+                LedgerResult result = engine.createAccount(fields[1].trim(), fields[2].trim(), fields[3].trim(),
+                        amount(fields[4]), AccountType.valueOf(fields[5].trim().toUpperCase(Locale.ROOT)));
+                if (result.isSuccess() && fields.length == 7 && !fields[6].isBlank()) {
+                    labels.put(fields[6].trim(), result.getAccountNumber());
+                }
+                return result;
+            }
+            case "deposit" -> {
+                requireFields(fields, 3, 3);
+                return engine.deposit(account(fields[1]), amount(fields[2]));
+            }
+            case "withdraw" -> {
+                requireFields(fields, 3, 3);
+                return engine.withdraw(account(fields[1]), amount(fields[2]));
+            }
+            case "transfer" -> {
+                requireFields(fields, 4, 4);
+                return engine.transferFunds(account(fields[1]), account(fields[2]), amount(fields[3]));
+            }
+            case "close" -> {
+                requireFields(fields, 2, 2);
+                return engine.closeAccount(account(fields[1]));
+            }
+            default -> throw new IllegalArgumentException("Unknown command: " + command);
+        }
+    }
+
+    private static void requireFields(String[] fields, int min, int max) {
+        if (fields.length < min || fields.length > max) {
+            throw new IllegalArgumentException("Expected " + min + " to " + max + " fields but found " + fields.length);
+        }
+    }
+
+    // Same rule as the console: non-negative, at most two decimal places
+    private static long amount(String field) {
+        long amount = Money.parse(field);
+        if (amount < 0) {
+            throw new IllegalArgumentException("Amount must be non-negative: " + field);
+        }
+        return amount;
+    }
+
+    private String account(String field) {
+        String accountNumber = field.trim();
+        if (accountNumber.startsWith("@")) {
+            // A label whose create was rejected is left as is, so the engine reports the account as not found
+            return labels.getOrDefault(accountNumber.substring(1), accountNumber);
+        }
+        return accountNumber;
+    }
+}
@@ -0,0 +1,280 @@
+package ledger;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Versioned binary snapshot file for accounts, read and written through buffered {@link FileChannel}s.
+ * Its {@link Writer} and {@link Reader} also serve the other binary files of the ledger.
+ *
+ * The file starts with {@code [int magic][int version][long checkpoint LSN]} and ends with a CRC32 of
+ * everything before it. Numbers are fixed width and big-endian; strings are UTF-8 with a length prefix.
+ * <pre>
+ * [int count] then per account:
+ * [str accountNumber][byte type][long balance][str name][str address][str phoneNumber]
+ * </pre>
+ */
+public final class BinarySnapshots {
+
+    public static final int ACCOUNTS_MAGIC = 0x424B4143; // "BKAC"
+    public static final int FORMAT_VERSION = 1;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final AccountType[] ACCOUNT_TYPES = AccountType.values();
+
+    /**
+     * Snapshot contents together with the LSN of the last journal record they include.
+     */
+    public static final class Loaded<T> {
+        private final T contents;
+        private final long checkpointLsn;
+
+        private Loaded(T contents, long checkpointLsn) {
+            this.contents = contents;
+            this.checkpointLsn = checkpointLsn;
+        }
+
+        public T getContents() {
+            return contents;
+        }
+
+        public long getCheckpointLsn() {
+            return checkpointLsn;
+        }
+    }
+
+    private BinarySnapshots() {
+    }
+
+    /**
+     * True if the file starts with the accounts snapshot magic; false for anything else, such as
+     * the Java serialization files written by earlier versions.
+     */
+    public static boolean isBinary(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(Integer.BYTES);
+            while (magic.hasRemaining() && channel.read(magic) >= 0) {
+                // Keep reading until the magic is complete or the file ends
+            }
+            if (magic.hasRemaining()) {
+                return false;
+            }
+            int value = magic.flip().getInt();
+            return value == ACCOUNTS_MAGIC;
+        }
+    }
+
+    public static void writeAccounts(Path file, Collection<Account> accounts, long checkpointLsn) throws IOException {
+        try (Writer out = new Writer(file)) {
+            out.putInt(ACCOUNTS_MAGIC);
+            out.putInt(FORMAT_VERSION);
+            out.putLong(checkpointLsn);
+            out.putInt(accounts.size());
+            for (Account account : accounts) {
+                out.putString(account.getAccountNumber());
+                out.putByte(account.getAccountType().ordinal());
+                out.putLong(account.getBalance());
+                out.putString(account.getName());
+                out.putString(account.getAddress());
+                out.putString(account.getPhoneNumber());
+            }
+            out.finish();
+        }
+    }
+
+    public static Loaded<Map<String, Account>> readAccounts(Path file) throws IOException {
+        try (Reader in = new Reader(file)) {
+            long checkpointLsn = in.readHeader(ACCOUNTS_MAGIC);
+            int count = in.getCount();
+            Map<String, Account> accounts = new HashMap<>(Math.max(16, (int) (count / 0.75f) + 1));
+            for (int i = 0; i < count; i++) {
+                String accountNumber = in.getString();
+                AccountType accountType = ACCOUNT_TYPES[in.getOrdinal(ACCOUNT_TYPES.length)];
+                long balance = in.getLong();
+                accounts.put(accountNumber, new Account(accountNumber, in.getString(), in.getString(), in.getString(), balance, accountType));
+            }
+            in.verifyChecksum();
+            return new Loaded<>(accounts, checkpointLsn);
+        }
+    }
+
+    // Buffers writes into a direct buffer and keeps a running checksum of everything written. Also used
+    // for the index of MappedTransactionStore.
+    static final class Writer implements AutoCloseable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final CRC32 crc = new CRC32();
+
+        Writer(Path file) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        void putByte(int value) throws IOException {
+            ensure(Byte.BYTES);
+            buffer.put((byte) value);
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(Integer.BYTES);
+            buffer.putInt(value);
+        }
+
+        void putLong(long value) throws IOException {
+            ensure(Long.BYTES);
+            buffer.putLong(value);
+        }
+
+        void putString(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > BUFFER_SIZE - Integer.BYTES) {
+                throw new IOException("String too long for snapshot: " + bytes.length + " bytes");
+            }
+            ensure(Integer.BYTES + bytes.length);
+            buffer.putInt(bytes.length).put(bytes);
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            ByteBuffer checksummed = buffer.duplicate();
+            crc.update(checksummed);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        // Appends the checksum and forces the file to disk.
+        void finish() throws IOException {
+            flush();
+            buffer.putInt((int) crc.getValue()).flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+            channel.force(true);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    // Refills a direct buffer from the channel on demand and checksums every byte consumed.
+    static final class Reader implements AutoCloseable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final CRC32 crc = new CRC32();
+        int checksummedUpTo; // Position in buffer up to which bytes are included in crc
+
+        Reader(Path file) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            buffer.limit(0);
+        }
+
+        long readHeader(int expectedMagic) throws IOException {
+            int magic = getInt();
+            if (magic != expectedMagic) {
+                throw new IOException("Not a snapshot file of the expected kind (magic " + Integer.toHexString(magic) + ")");
+            }
+            int version = getInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported snapshot format version " + version);
+            }
+            return getLong();
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) {
+                return;
+            }
+            updateChecksum();
+            buffer.compact();
+            checksummedUpTo = 0;
+            while (buffer.position() < bytes) {
+                if (channel.read(buffer) < 0) {
+                    throw new EOFException("Snapshot file is truncated");
+                }
+            }
+            buffer.flip();
+        }
+
+        private void updateChecksum() {
+            ByteBuffer consumed = buffer.duplicate();
+            consumed.position(checksummedUpTo).limit(buffer.position());
+            crc.update(consumed);
+            checksummedUpTo = buffer.position();
+        }
+
+        int getOrdinal(int bound) throws IOException {
+            return checkRange(getByte(), bound);
+        }
+
+        private static int checkRange(int value, int bound) throws IOException {
+            if (value < 0 || value >= bound) {
+                throw new IOException("Corrupt snapshot: reference " + value + " out of range");
+            }
+            return value;
+        }
+
+        int getByte() throws IOException {
+            ensure(Byte.BYTES);
+            return buffer.get();
+        }
+
+        int getInt() throws IOException {
+            ensure(Integer.BYTES);
+            return buffer.getInt();
+        }
+
+        int getCount() throws IOException {
+            int count = getInt();
+            if (count < 0) {
+                throw new IOException("Corrupt snapshot: negative count " + count);
+            }
+            return count;
+        }
+
+        long getLong() throws IOException {
+            ensure(Long.BYTES);
+            return buffer.getLong();
+        }
+
+        String getString() throws IOException {
+            int length = getInt();
+            if (length < 0 || length > BUFFER_SIZE - Integer.BYTES) {
+                throw new IOException("Corrupt snapshot: string length " + length);
+            }
+            ensure(length);
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        void verifyChecksum() throws IOException {
+            updateChecksum();
+            int expected = (int) crc.getValue();
+            if (getInt() != expected) {
+                throw new IOException("Snapshot checksum mismatch");
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package ledger;
+
+import java.util.Locale;
+
+/**
+ * Running totals for the checkpoints of a {@link LedgerStore}: how many ran, how long they took and how
+ * many bytes they wrote. Safe to read from any thread while checkpoints run.
+ */
+public final class CheckpointMetrics {
+
+    private long checkpoints;
+    private long failures;
+    private long lastDurationNanos;
+    private long maxDurationNanos;
+    private long totalDurationNanos;
+    private long lastBytesWritten;
+    private long totalBytesWritten;
+
+    synchronized void record(long durationNanos, long bytesWritten, boolean succeeded) {
+        checkpoints++;
+        if (!succeeded) {
+            failures++;
+        }
+        lastDurationNanos = durationNanos;
+        maxDurationNanos = Math.max(maxDurationNanos, durationNanos);
+        totalDurationNanos += durationNanos;
+        lastBytesWritten = bytesWritten;
+        totalBytesWritten += bytesWritten;
+    }
+
+    public synchronized long getCheckpoints() {
+        return checkpoints;
+    }
+
+    public synchronized long getFailures() {
+        return failures;
+    }
+
+    public synchronized long getLastDurationNanos() {
+        return lastDurationNanos;
+    }
+
+    public synchronized long getMaxDurationNanos() {
+        return maxDurationNanos;
+    }
+
+    public synchronized long getTotalDurationNanos() {
+        return totalDurationNanos;
+    }
+
+    public synchronized long getLastBytesWritten() {
+        return lastBytesWritten;
+    }
+
+    public synchronized long getTotalBytesWritten() {
+        return totalBytesWritten;
+    }
+
+    @Override
+    public synchronized String toString() {
+        if (checkpoints == 0) {
+            return "Checkpoints: none";
+        }
+        return String.format(Locale.ROOT, "Checkpoints: %d (%d failed), last %.1f ms / %d bytes, max %.1f ms, mean %.1f ms, %d bytes in total",
+                checkpoints, failures, lastDurationNanos / 1e6, lastBytesWritten, maxDurationNanos / 1e6,
+                totalDurationNanos / 1e6 / checkpoints, totalBytesWritten);
+    }
+}
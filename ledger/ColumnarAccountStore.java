@@ -0,0 +1,487 @@
+package ledger;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+
+/**
+ * Accounts kept column by column in primitive arrays, for ledgers with tens of millions of accounts where
+ * an {@link Account} object, its map entry and its account number string per account cost more memory
+ * and garbage collection work than the data they hold.
+ *
+ * Each account is a row: its balance in a {@code long[]}, its type in a {@code byte[]}, and its name,
+ * address and phone number in separate arrays of their own, read only when a whole account is asked for.
+ * Account numbers are not stored as text. A number in the current format, ten digits, is its own numeric
+ * ID, and a legacy one, eight hex characters, is its value tagged with its case; IDs map to rows through
+ * an open-addressing table of {@code long} keys with linear probing, at most half full, so a lookup is a
+ * parse and usually one or two probes with no allocation. Numbers in any other form get the next ID of a
+ * separate sequence through a small map. Rows freed by removed accounts are reused.
+ *
+ * About 53 bytes per account besides the name, address and phone strings, against roughly 130 for an
+ * {@code Account}, its number and its {@link java.util.concurrent.ConcurrentHashMap} entry.
+ *
+ * Lookups read optimistically under a {@link StampedLock} and retry under its read lock if an account
+ * was added or removed meanwhile. Balance writes take the read lock, so they never race with the arrays
+ * being copied to grow, and are volatile, as {@link Account}'s are. Adding and removing accounts take
+ * the write lock.
+ */
+public final class ColumnarAccountStore implements AccountStore {
+
+    private static final VarHandle BALANCES = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final AccountType[] TYPES = AccountType.values();
+    private static final long EMPTY = 0L; // No account has ID 0
+    private static final long HEX_UPPER = 1L << 40; // Tags for legacy numbers; ten-digit numbers stay below 2^34
+    private static final long HEX_LOWER = 1L << 41;
+    private static final long OTHER = 1L << 42; // IDs handed to numbers in neither format
+    private static final int INITIAL_ROWS = 1024;
+    private static final int FOR_EACH_CHUNK = 4096; // Rows visited per hold of the read lock
+
+    // Replaced as a whole when the store grows, so an optimistic reader always sees arrays that belong
+    // together. The table has twice as many slots as there are rows.
+    private static final class Columns {
+        private final long[] keys; // Table slot -> account ID, or EMPTY
+        private final int[] rows; // Table slot -> row of that account
+        private final long[] ids; // Row -> account ID, or EMPTY for a free row
+        private final long[] balances;
+        private final byte[] types;
+        private final String[] names;
+        private final String[] addresses;
+        private final String[] phoneNumbers;
+
+        private Columns(int rowCapacity) {
+            keys = new long[rowCapacity * 2];
+            rows = new int[rowCapacity * 2];
+            ids = new long[rowCapacity];
+            balances = new long[rowCapacity];
+            types = new byte[rowCapacity];
+            names = new String[rowCapacity];
+            addresses = new String[rowCapacity];
+            phoneNumbers = new String[rowCapacity];
+        }
+    }
+
+    private final StampedLock lock = new StampedLock();
+    private volatile Columns columns = new Columns(INITIAL_ROWS);
+    private volatile int size;
+    // Guarded by the write lock
+    private int usedRows; // Rows below this have held an account; the free ones are in freeRows
+    private int[] freeRows = new int[16];
+    private int freeCount;
+    private final Map<String, Long> otherIds = new HashMap<>(); // Read under the read lock
+    private final Map<Long, String> otherNumbers = new HashMap<>();
+    private long nextOtherId = OTHER + 1;
+
+    @Override
+    public Account get(String accountNumber) {
+        long id = parseId(accountNumber);
+        if (id < 0) {
+            long stamp = lock.readLock();
+            try {
+                return read(columns, otherId(accountNumber), accountNumber);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        long stamp = lock.tryOptimisticRead();
+        Account account = read(columns, id, accountNumber);
+        if (lock.validate(stamp)) {
+            return account;
+        }
+        stamp = lock.readLock();
+        try {
+            return read(columns, id, accountNumber);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public boolean contains(String accountNumber) {
+        return getBalance(accountNumber) != NO_ACCOUNT;
+    }
+
+    @Override
+    public long getBalance(String accountNumber) {
+        long id = parseId(accountNumber);
+        if (id >= 0) {
+            long stamp = lock.tryOptimisticRead();
+            Columns current = columns;
+            int row = find(current, id);
+            long balance = row < 0 ? NO_ACCOUNT : (long) BALANCES.getVolatile(current.balances, row);
+            if (lock.validate(stamp)) {
+                return balance;
+            }
+        }
+        long stamp = lock.readLock();
+        try {
+            Columns current = columns;
+            int row = find(current, id >= 0 ? id : otherId(accountNumber));
+            return row < 0 ? NO_ACCOUNT : (long) BALANCES.getVolatile(current.balances, row);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public AccountType getAccountType(String accountNumber) {
+        long id = parseId(accountNumber);
+        if (id >= 0) {
+            long stamp = lock.tryOptimisticRead();
+            Columns current = columns;
+            int row = find(current, id);
+            AccountType type = row < 0 ? null : TYPES[current.types[row]];
+            if (lock.validate(stamp)) {
+                return type;
+            }
+        }
+        long stamp = lock.readLock();
+        try {
+            Columns current = columns;
+            int row = find(current, id >= 0 ? id : otherId(accountNumber));
+            return row < 0 ? null : TYPES[current.types[row]];
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public void setBalance(String accountNumber, long balance) {
+        long id = parseId(accountNumber);
+        long stamp = lock.readLock();
+        try {
+            Columns current = columns;
+            int row = find(current, id >= 0 ? id : otherId(accountNumber));
+            if (row >= 0) {
+                BALANCES.setVolatile(current.balances, row, balance);
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public boolean add(Account account) {
+        long stamp = lock.writeLock();
+        try {
+            long id = idForWrite(account.getAccountNumber());
+            if (find(columns, id) >= 0) {
+                return false;
+            }
+            insert(id, account);
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public Account put(Account account) {
+        long stamp = lock.writeLock();
+        try {
+            long id = idForWrite(account.getAccountNumber());
+            Columns current = columns;
+            int row = find(current, id);
+            if (row < 0) {
+                insert(id, account);
+                return null;
+            }
+            Account replaced = read(current, id, account.getAccountNumber());
+            fill(current, row, id, account);
+            return replaced;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public Account remove(String accountNumber) {
+        long stamp = lock.writeLock();
+        try {
+            long id = parseId(accountNumber);
+            if (id < 0) {
+                id = otherId(accountNumber);
+            }
+            Columns current = columns;
+            int slot = findSlot(current, id);
+            if (slot < 0) {
+                return null;
+            }
+            Account removed = read(current, id, accountNumber);
+            int row = current.rows[slot];
+            deleteSlot(current, slot);
+            current.ids[row] = EMPTY;
+            current.names[row] = null;
+            current.addresses[row] = null;
+            current.phoneNumbers[row] = null;
+            if (freeCount == freeRows.length) {
+                int[] grown = new int[freeRows.length << 1];
+                System.arraycopy(freeRows, 0, grown, 0, freeCount);
+                freeRows = grown;
+            }
+            freeRows[freeCount++] = row;
+            if ((id & OTHER) != 0) {
+                otherIds.remove(accountNumber);
+                otherNumbers.remove(id);
+            }
+            size--;
+            return removed;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void forEach(Consumer<Account> action) {
+        List<Account> chunk = new ArrayList<>(FOR_EACH_CHUNK);
+        for (int start = 0; ; start += FOR_EACH_CHUNK) {
+            chunk.clear();
+            long stamp = lock.readLock();
+            try {
+                if (start >= usedRows) {
+                    return;
+                }
+                Columns current = columns;
+                int end = Math.min(usedRows, start + FOR_EACH_CHUNK);
+                for (int row = start; row < end; row++) {
+                    if (current.ids[row] != EMPTY) {
+                        chunk.add(accountAt(current, row, accountNumber(current.ids[row])));
+                    }
+                }
+            } finally {
+                lock.unlockRead(stamp);
+            }
+            chunk.forEach(action); // Outside the lock, so the action can use the store
+        }
+    }
+
+    @Override
+    public void clear() {
+        long stamp = lock.writeLock();
+        try {
+            columns = new Columns(INITIAL_ROWS);
+            usedRows = 0;
+            freeCount = 0;
+            otherIds.clear();
+            otherNumbers.clear();
+            size = 0;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // --- Internals ---
+
+    // The ID of a ten-digit or eight-hex-character number, or -1 for any other form.
+    static long parseId(String accountNumber) {
+        int length = accountNumber.length();
+        if (length == 10 && accountNumber.charAt(0) != '0') {
+            long id = 0L;
+            for (int i = 0; i < length; i++) {
+                char c = accountNumber.charAt(i);
+                if (c < '0' || c > '9') {
+                    return -1L;
+                }
+                id = id * 10 + (c - '0');
+            }
+            return id;
+        }
+        if (length == 8) {
+            long value = 0L;
+            boolean upper = false;
+            boolean lower = false;
+            for (int i = 0; i < length; i++) {
+                char c = accountNumber.charAt(i);
+                int digit;
+                if (c >= '0' && c <= '9') {
+                    digit = c - '0';
+                } else if (c >= 'A' && c <= 'F') {
+                    digit = c - 'A' + 10;
+                    upper = true;
+                } else if (c >= 'a' && c <= 'f') {
+                    digit = c - 'a' + 10;
+                    lower = true;
+                } else {
+                    return -1L;
+                }
+                value = value << 4 | digit;
+            }
+            return upper && lower ? -1L : (lower ? HEX_LOWER : HEX_UPPER) | value; // Mixed case could not be rebuilt
+        }
+        return -1L;
+    }
+
+    // Needs the read or write lock. EMPTY if the number has no ID.
+    private long otherId(String accountNumber) {
+        Long id = otherIds.get(accountNumber);
+        return id == null ? EMPTY : id;
+    }
+
+    // Needs the write lock
+    private long idForWrite(String accountNumber) {
+        long id = parseId(accountNumber);
+        if (id >= 0) {
+            return id;
+        }
+        id = otherId(accountNumber);
+        if (id == EMPTY) {
+            id = nextOtherId++;
+            otherIds.put(accountNumber, id);
+            otherNumbers.put(id, accountNumber);
+        }
+        return id;
+    }
+
+    // Reading other numbers needs the read or write lock; only their accounts have such IDs
+    private String accountNumber(long id) {
+        if ((id & OTHER) != 0) {
+            return otherNumbers.get(id);
+        }
+        if ((id & (HEX_UPPER | HEX_LOWER)) != 0) {
+            char letter = (id & HEX_LOWER) != 0 ? 'a' : 'A';
+            char[] digits = new char[8];
+            long value = id;
+            for (int i = digits.length - 1; i >= 0; i--) {
+                int digit = (int) (value & 0xF);
+                digits[i] = (char) (digit < 10 ? '0' + digit : letter + digit - 10);
+                value >>>= 4;
+            }
+            return new String(digits);
+        }
+        return Long.toString(id);
+    }
+
+    private static int hash(long id) {
+        long h = id * 0x9E3779B97F4A7C15L; // Sequential IDs spread over the whole table
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static int findSlot(Columns current, long id) {
+        if (id == EMPTY) {
+            return -1;
+        }
+        long[] keys = current.keys;
+        int mask = keys.length - 1;
+        // Bounded, since an optimistic reader can see slots being shifted by a removal
+        for (int slot = hash(id) & mask, probes = 0; probes <= mask; slot = (slot + 1) & mask, probes++) {
+            long key = keys[slot];
+            if (key == id) {
+                return slot;
+            }
+            if (key == EMPTY) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private static int find(Columns current, long id) {
+        int slot = findSlot(current, id);
+        return slot < 0 ? -1 : current.rows[slot];
+    }
+
+    // accountNumber is the number of id, so it need not be rebuilt
+    private Account read(Columns current, long id, String accountNumber) {
+        int row = find(current, id);
+        // A row holding another ID can only be seen by an optimistic read that will not validate
+        return row < 0 || current.ids[row] != id ? null : accountAt(current, row, accountNumber);
+    }
+
+    private static Account accountAt(Columns current, int row, String accountNumber) {
+        return new Account(accountNumber, current.names[row], current.addresses[row], current.phoneNumbers[row],
+                (long) BALANCES.getVolatile(current.balances, row), TYPES[current.types[row]]);
+    }
+
+    // Needs the write lock; the account must not be in the store
+    private void insert(long id, Account account) {
+        int row;
+        if (freeCount > 0) {
+            row = freeRows[--freeCount];
+        } else {
+            if (usedRows == columns.ids.length) {
+                grow();
+            }
+            row = usedRows++;
+        }
+        Columns current = columns;
+        fill(current, row, id, account);
+        long[] keys = current.keys;
+        int mask = keys.length - 1;
+        int slot = hash(id) & mask;
+        while (keys[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        current.rows[slot] = row;
+        keys[slot] = id;
+        size++;
+    }
+
+    private static void fill(Columns current, int row, long id, Account account) {
+        current.ids[row] = id;
+        current.types[row] = (byte) account.getAccountType().ordinal();
+        current.names[row] = account.getName();
+        current.addresses[row] = account.getAddress();
+        current.phoneNumbers[row] = account.getPhoneNumber();
+        BALANCES.setVolatile(current.balances, row, account.getBalance());
+    }
+
+    // Needs the write lock. Doubles the rows and the table and publishes them together.
+    private void grow() {
+        Columns old = columns;
+        int rowCapacity = old.ids.length;
+        Columns grown = new Columns(rowCapacity << 1);
+        System.arraycopy(old.ids, 0, grown.ids, 0, rowCapacity);
+        System.arraycopy(old.balances, 0, grown.balances, 0, rowCapacity);
+        System.arraycopy(old.types, 0, grown.types, 0, rowCapacity);
+        System.arraycopy(old.names, 0, grown.names, 0, rowCapacity);
+        System.arraycopy(old.addresses, 0, grown.addresses, 0, rowCapacity);
+        System.arraycopy(old.phoneNumbers, 0, grown.phoneNumbers, 0, rowCapacity);
+        int mask = grown.keys.length - 1;
+        for (int row = 0; row < rowCapacity; row++) {
+            long id = grown.ids[row];
+            if (id != EMPTY) {
+                int slot = hash(id) & mask;
+                while (grown.keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                grown.keys[slot] = id;
+                grown.rows[slot] = row;
+            }
+        }
+        columns = grown;
+    }
+
+    // Needs the write lock. Empties the slot and shifts later keys of the same probe run back into the
+    // gap, so lookups never need tombstones.
+    private static void deleteSlot(Columns current, int slot) {
+        long[] keys = current.keys;
+        int mask = keys.length - 1;
+        int gap = slot;
+        int next = slot;
+        while (true) {
+            next = (next + 1) & mask;
+            long key = keys[next];
+            if (key == EMPTY) {
+                keys[gap] = EMPTY;
+                return;
+            }
+            int home = hash(key) & mask;
+            // The key can fill the gap unless its home slot lies cyclically after the gap, up to where it is
+            boolean staysPut = gap <= next ? gap < home && home <= next : gap < home || home <= next;
+            if (!staysPut) {
+                keys[gap] = key;
+                current.rows[gap] = current.rows[next];
+                gap = next;
+            }
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package ledger;
+
+import java.util.List;
+
+/**
+ * One page of an account's transaction history, newest first, and where the next page starts.
+ */
+public final class HistoryPage {
+
+    private final List<Transaction> transactions;
+    private final long nextCursor;
+
+    HistoryPage(List<Transaction> transactions, long nextCursor) {
+        this.transactions = transactions;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<Transaction> getTransactions() {
+        return transactions;
+    }
+
+    public boolean hasNext() {
+        return nextCursor >= 0;
+    }
+
+    // Only meaningful while hasNext() is true
+    public long getNextCursor() {
+        return nextCursor;
+    }
+}
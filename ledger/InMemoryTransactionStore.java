@@ -0,0 +1,88 @@
+package ledger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Transaction history held on the heap: one list of every transaction plus, for each account, a growable
+ * {@code int[]} of the positions of its transactions in that list, in the order they were recorded, so
+ * reading one account's history costs O(the rows read) instead of a scan over every transaction. Used
+ * when the engine is not backed by files, as in the benchmarks and the stress test.
+ */
+public final class InMemoryTransactionStore implements TransactionStore {
+
+    private static final int INITIAL_CAPACITY = 4;
+
+    private static final class Offsets {
+        private int[] items = new int[INITIAL_CAPACITY];
+        private int size;
+
+        private void add(int offset) {
+            if (size == items.length) {
+                int[] grown = new int[items.length << 1];
+                System.arraycopy(items, 0, grown, 0, size);
+                items = grown;
+            }
+            items[size++] = offset;
+        }
+    }
+
+    private final List<Transaction> transactions = new ArrayList<>();
+    private final Map<String, Offsets> offsetsByAccount = new HashMap<>(); // Account Number -> positions in transactions
+
+    @Override
+    public void append(Transaction transaction) {
+        offsetsByAccount.computeIfAbsent(transaction.getAccountNumber(), key -> new Offsets()).add(transactions.size());
+        transactions.add(transaction);
+    }
+
+    @Override
+    public long size() {
+        return transactions.size();
+    }
+
+    @Override
+    public int count(String accountNumber) {
+        Offsets offsets = offsetsByAccount.get(accountNumber);
+        return offsets == null ? 0 : offsets.size;
+    }
+
+    // The cursor is the position, within the account's offsets, of the next transaction to return
+    @Override
+    public HistoryPage page(String accountNumber, long cursor, int pageSize) {
+        Offsets offsets = offsetsByAccount.get(accountNumber);
+        int count = offsets == null ? 0 : offsets.size;
+        if (cursor != NEWEST && (cursor < 0 || cursor >= count)) {
+            throw new IllegalArgumentException("Invalid history cursor: " + cursor);
+        }
+        int start = cursor == NEWEST ? count - 1 : (int) cursor;
+        int end = Math.max(-1, start - pageSize);
+        List<Transaction> page = new ArrayList<>(Math.max(0, start - end));
+        for (int i = start; i > end; i--) {
+            page.add(transactions.get(offsets.items[i]));
+        }
+        return new HistoryPage(page, end);
+    }
+
+    @Override
+    public void forEachNewestFirst(String accountNumber, Predicate<Transaction> action) {
+        Offsets offsets = offsetsByAccount.get(accountNumber);
+        if (offsets == null) {
+            return;
+        }
+        for (int i = offsets.size - 1; i >= 0; i--) {
+            if (!action.test(transactions.get(offsets.items[i]))) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        transactions.clear();
+        offsetsByAccount.clear();
+    }
+}
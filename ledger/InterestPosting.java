@@ -0,0 +1,30 @@
+package ledger;
+
+/**
+ * Interest to credit to one account, worked out from an {@link AccountActivity}. The transaction count
+ * read with it lets {@link LedgerEngine#postInterest} tell whether anything was posted in between.
+ */
+public final class InterestPosting {
+
+    private final String accountNumber;
+    private final long amount; // In cents
+    private final int transactionCount;
+
+    public InterestPosting(String accountNumber, long amount, int transactionCount) {
+        this.accountNumber = accountNumber;
+        this.amount = amount;
+        this.transactionCount = transactionCount;
+    }
+
+    public String getAccountNumber() {
+        return accountNumber;
+    }
+
+    public long getAmount() {
+        return amount;
+    }
+
+    public int getTransactionCount() {
+        return transactionCount;
+    }
+}
@@ -0,0 +1,1058 @@
+package ledger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * Accounts, the transaction ledger and the business rules that change them.
+ *
+ * The engine is safe to call from many threads. Every account hashes to one of a fixed set of lock
+ * stripes; an operation holds the stripes of the accounts it touches while it validates, journals and
+ * applies the change. Transfers take their two stripes in ascending index order, so transfers between
+ * disjoint accounts run in parallel and two opposing transfers can never deadlock. Once validated, a
+ * change is journaled, applied and added to the {@link TransactionStore} under a separate short-lived
+ * ledger lock, so the journal, the accounts and the history always agree on the order of changes. The
+ * operation then waits for its journal record to be durable with the ledger lock released, so with a
+ * {@link LedgerJournal.Settings#durable} journal concurrent operations share an fsync.
+ *
+ * {@link #snapshotAccounts} copies the accounts as of one point in that order while mutations keep
+ * running: the first change to an account after the cut saves the account's previous state for the
+ * snapshot.
+ *
+ * Interest is credited in batches by {@link #postInterest}, which holds the stripes of every account in
+ * the batch, again in ascending order, and journals the batch as a whole.
+ *
+ * Withdrawals and transfers must also pass the {@link VelocityRules}, checked under the same stripes
+ * from per-account sliding windows that every recorded transaction feeds.
+ *
+ * Accounts can also be found by phone number or name prefix through an {@link AccountIndex}, which
+ * every change that opens or closes an account updates along with the {@link AccountStore}.
+ *
+ * Balances and history pages rendered for display can be read through an {@link AccountViewCache}.
+ * Every commit invalidates the views of the accounts its records name once the change is applied.
+ *
+ * Accounts live in an {@link AccountStore}: Account objects in a map by default, or columns of
+ * primitives for very large ledgers. Operations read and write balances through the store and only ask
+ * it for whole accounts to show them, snapshot them or open and close them.
+ */
+public final class LedgerEngine {
+
+    public static final int SAVINGS_MONTHLY_WITHDRAWAL_LIMIT = 6;
+    public static final int DEFAULT_LOCK_STRIPES = 1024;
+    // Longest name, address or phone number, in chars. Far below what the journal and snapshots can hold
+    // (64 KiB of UTF-8 per string), so a long field can never make them fail.
+    public static final int MAX_FIELD_LENGTH = 256;
+    private static final int ACTIVITY_PAGE_SIZE = 256;
+
+    private final AccountStore accounts;
+    private final AccountIndex accountIndex = new AccountIndex(); // Phone number and name -> Account Number
+    private TransactionStore transactionStore = new InMemoryTransactionStore(); // Store transaction history
+    private final MonthlyWithdrawalCounter savingsWithdrawals = new MonthlyWithdrawalCounter(ZoneId.systemDefault()); // SAVINGS withdrawals this month
+    private final ReentrantLock ledgerLock = new ReentrantLock(); // Orders journal appends, applied changes and transactionStore
+    private final ReentrantLock[] stripes;
+    private final int stripeMask;
+    private volatile LedgerJournal journal;
+    private volatile AccountsCut accountsCut; // Set while snapshotAccounts is copying
+    private final LedgerMetrics metrics = new LedgerMetrics();
+    private volatile LedgerIds ids = LedgerIds.inMemory();
+    private volatile VelocityRules velocityRules = VelocityRules.none();
+    private volatile AccountViewCache viewCache = AccountViewCache.withDefaults();
+
+    // Accounts as they were at a snapshot's cut, for those changed since. ABSENT marks accounts created since.
+    private static final class AccountsCut {
+        private static final Account ABSENT = new Account("", "", "", "", 0L, AccountType.CHECKING);
+        private final Map<String, Account> preImages = new ConcurrentHashMap<>();
+
+        private void preserve(String accountNumber, Account current) {
+            preImages.computeIfAbsent(accountNumber, key -> current == null ? ABSENT : copyOf(current));
+        }
+    }
+
+    public LedgerEngine() {
+        this(DEFAULT_LOCK_STRIPES);
+    }
+
+    public LedgerEngine(int lockStripes) {
+        this(lockStripes, new MapAccountStore());
+    }
+
+    public LedgerEngine(AccountStore accounts) {
+        this(DEFAULT_LOCK_STRIPES, accounts);
+    }
+
+    /**
+     * @param accounts an empty store for the engine's accounts, which the engine then owns
+     */
+    public LedgerEngine(int lockStripes, AccountStore accounts) {
+        this.accounts = accounts;
+        int size = Integer.highestOneBit(Math.max(1, lockStripes - 1) << 1); // Round up to a power of two
+        stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        stripeMask = size - 1;
+    }
+
+    /**
+     * Latencies and outcomes of every operation since the engine was created.
+     */
+    public LedgerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Where new account numbers and transaction IDs come from. Defaults to sequences kept in memory only.
+     */
+    public void setIds(LedgerIds ids) {
+        this.ids = ids;
+    }
+
+    /**
+     * Limits on how often and how much money can leave an account. Set them before the ledger is
+     * restored, so their windows are filled from the recent history. Defaults to no rules.
+     */
+    public void setVelocityRules(VelocityRules velocityRules) {
+        this.velocityRules = velocityRules;
+    }
+
+    public VelocityRules getVelocityRules() {
+        return velocityRules;
+    }
+
+    /**
+     * Where {@link #balanceView} and {@link #historyPageView} keep rendered views. Set it before the
+     * engine is in use. Defaults to {@link AccountViewCache#withDefaults()}.
+     */
+    public void setViewCache(AccountViewCache viewCache) {
+        this.viewCache = viewCache;
+    }
+
+    public AccountViewCache getViewCache() {
+        return viewCache;
+    }
+
+    /**
+     * Mutations are written ahead to this journal before they are applied. Without one the engine
+     * keeps its state in memory only.
+     */
+    public void setJournal(LedgerJournal journal) {
+        this.journal = journal;
+    }
+
+    // --- Operations ---
+    // Each public operation times its perform* method into metrics. Those that need new IDs can fail
+    // to reserve them, which nothing has been changed by yet.
+
+    public LedgerResult createAccount(String name, String address, String phoneNumber, long initialDeposit, AccountType accountType) {
+        long start = System.nanoTime();
+        LedgerResult result;
+        try {
+            result = performCreateAccount(name, address, phoneNumber, initialDeposit, accountType);
+        } catch (UncheckedIOException e) {
+            result = idReservationFailure(e);
+        }
+        return metrics.record(LedgerMetrics.Operation.CREATE_ACCOUNT, start, result);
+    }
+
+    public LedgerResult deposit(String accountNumber, long amount) {
+        long start = System.nanoTime();
+        LedgerResult result;
+        try {
+            result = performDeposit(accountNumber, amount);
+        } catch (UncheckedIOException e) {
+            result = idReservationFailure(e);
+        }
+        return metrics.record(LedgerMetrics.Operation.DEPOSIT, start, result);
+    }
+
+    public LedgerResult withdraw(String accountNumber, long amount) {
+        long start = System.nanoTime();
+        LedgerResult result;
+        try {
+            result = performWithdraw(accountNumber, amount);
+        } catch (UncheckedIOException e) {
+            result = idReservationFailure(e);
+        }
+        return metrics.record(LedgerMetrics.Operation.WITHDRAW, start, result);
+    }
+
+    public LedgerResult transferFunds(String sourceAccountNumber, String destinationAccountNumber, long amount) {
+        long start = System.nanoTime();
+        LedgerResult result;
+        try {
+            result = performTransferFunds(sourceAccountNumber, destinationAccountNumber, amount);
+        } catch (UncheckedIOException e) {
+            result = idReservationFailure(e);
+        }
+        return metrics.record(LedgerMetrics.Operation.TRANSFER, start, result);
+    }
+
+    public LedgerResult closeAccount(String accountNumber) {
+        long start = System.nanoTime();
+        return metrics.record(LedgerMetrics.Operation.CLOSE_ACCOUNT, start, performCloseAccount(accountNumber));
+    }
+
+    private LedgerResult performCreateAccount(String name, String address, String phoneNumber, long initialDeposit, AccountType accountType) {
+        if (name.length() > MAX_FIELD_LENGTH || address.length() > MAX_FIELD_LENGTH || phoneNumber.length() > MAX_FIELD_LENGTH) {
+            return LedgerResult.rejected(LedgerResult.Status.FIELD_TOO_LONG, "Error: Name, address and phone number can each be at most "
+                    + MAX_FIELD_LENGTH + " characters long.");
+        }
+        if (initialDeposit < getMinimumInitialDeposit(accountType)) {
+            return LedgerResult.rejected(LedgerResult.Status.BELOW_MINIMUM_DEPOSIT, "Error: Initial deposit must be at least $"
+                    + Money.format(getMinimumInitialDeposit(accountType)) + " for a " + accountType + " account.");
+        }
+
+        // Sequence numbers never repeat, but a number could still be taken if the ID file was lost
+        String accountNumber;
+        ReentrantLock lock;
+        while (true) {
+            accountNumber = ids.nextAccountNumber();
+            lock = stripeFor(accountNumber);
+            lock.lock();
+            if (!accounts.contains(accountNumber)) {
+                break;
+            }
+            lock.unlock();
+        }
+        try {
+            Account account = new Account(accountNumber, name, address, phoneNumber, initialDeposit, accountType);
+
+            // Record initial deposit as a transaction
+            Transaction initialDepositTransaction = newTransaction(accountNumber, TransactionType.DEPOSIT, initialDeposit, "Initial deposit");
+            String opened = accountNumber; // For the message below
+            LedgerResult journalFailure = commit(LedgerJournal.Record.openAccount(initialDepositTransaction.getTimestamp(), accountNumber,
+                    name, address, phoneNumber, initialDeposit, accountType.name(), initialDepositTransaction.getTransactionId()), () -> {
+                if (!accounts.add(account)) {
+                    throw new IllegalStateException("Account number already in use: " + opened); // Checked above under the same stripe
+                }
+                accountIndex.add(account);
+            }, initialDepositTransaction);
+            if (journalFailure != null) {
+                return journalFailure;
+            }
+            return LedgerResult.success(accountNumber, initialDeposit);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private LedgerResult performDeposit(String accountNumber, long amount) {
+        if (amount <= 0) {
+            return LedgerResult.rejected(LedgerResult.Status.INVALID_AMOUNT, "Invalid deposit amount. Amount must be positive.");
+        }
+
+        ReentrantLock lock = stripeFor(accountNumber);
+        lock.lock();
+        try {
+            long balance = accounts.getBalance(accountNumber);
+            if (balance == AccountStore.NO_ACCOUNT) {
+                return LedgerResult.rejected(LedgerResult.Status.ACCOUNT_NOT_FOUND, "Account not found.");
+            }
+
+            long newBalance;
+            try {
+                newBalance = Money.add(balance, amount);
+            } catch (ArithmeticException e) {
+                return LedgerResult.rejected(LedgerResult.Status.BALANCE_OVERFLOW, "Deposit rejected. The balance would exceed the maximum supported amount.");
+            }
+
+            Transaction transaction = newTransaction(accountNumber, TransactionType.DEPOSIT, amount, "Deposit");
+            LedgerResult journalFailure = commit(LedgerJournal.Record.deposit(transaction.getTimestamp(), accountNumber, amount, transaction.getTransactionId()),
+                    () -> accounts.setBalance(accountNumber, newBalance), transaction);
+            if (journalFailure != null) {
+                return journalFailure;
+            }
+            return LedgerResult.success(accountNumber, newBalance);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private LedgerResult performWithdraw(String accountNumber, long amount) {
+        if (amount <= 0) {
+            return LedgerResult.rejected(LedgerResult.Status.INVALID_AMOUNT, "Invalid withdrawal amount. Amount must be positive.");
+        }
+
+        ReentrantLock lock = stripeFor(accountNumber);
+        lock.lock();
+        try {
+            long balance = accounts.getBalance(accountNumber);
+            if (balance == AccountStore.NO_ACCOUNT) {
+                return LedgerResult.rejected(LedgerResult.Status.ACCOUNT_NOT_FOUND, "Account not found.");
+            }
+
+            if (balance < amount) {
+                return LedgerResult.rejected(LedgerResult.Status.INSUFFICIENT_FUNDS, "Insufficient funds.");
+            }
+
+            long now = System.currentTimeMillis();
+            if (accounts.getAccountType(accountNumber) == AccountType.SAVINGS &&
+                savingsWithdrawals.count(accountNumber, now) >= SAVINGS_MONTHLY_WITHDRAWAL_LIMIT) {
+                return LedgerResult.rejected(LedgerResult.Status.SAVINGS_LIMIT_REACHED, "Savings account withdrawal limit reached.  You can only make "
+                        + SAVINGS_MONTHLY_WITHDRAWAL_LIMIT + " withdrawals per month.");
+            }
+
+            VelocityRules.Rule brokenRule = velocityRules.check(accountNumber, TransactionType.WITHDRAWAL, amount, now);
+            if (brokenRule != null) {
+                return LedgerResult.rejected(LedgerResult.Status.VELOCITY_LIMIT_REACHED, brokenRule.getRejection());
+            }
+
+            long newBalance = Money.subtract(balance, amount);
+            Transaction transaction = newTransaction(accountNumber, TransactionType.WITHDRAWAL, amount, "Withdrawal");
+            LedgerResult journalFailure = commit(LedgerJournal.Record.withdrawal(transaction.getTimestamp(), accountNumber, amount, transaction.getTransactionId()),
+                    () -> accounts.setBalance(accountNumber, newBalance), transaction);
+            if (journalFailure != null) {
+                return journalFailure;
+            }
+            return LedgerResult.success(accountNumber, newBalance);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private LedgerResult performTransferFunds(String sourceAccountNumber, String destinationAccountNumber, long amount) {
+        if (amount <= 0) {
+            return LedgerResult.rejected(LedgerResult.Status.INVALID_AMOUNT, "Invalid transfer amount. Amount must be positive.");
+        }
+
+        // Always lock the lower stripe first so opposing transfers cannot deadlock
+        int sourceStripe = stripeIndex(sourceAccountNumber);
+        int destinationStripe = stripeIndex(destinationAccountNumber);
+        ReentrantLock first = stripes[Math.min(sourceStripe, destinationStripe)];
+        ReentrantLock second = stripes[Math.max(sourceStripe, destinationStripe)];
+        first.lock();
+        second.lock(); // Re-entrant, so a shared stripe is simply held twice
+        try {
+            long sourceBalance = accounts.getBalance(sourceAccountNumber);
+            long destinationBalance = accounts.getBalance(destinationAccountNumber);
+
+            if (sourceBalance == AccountStore.NO_ACCOUNT || destinationBalance == AccountStore.NO_ACCOUNT) {
+                return LedgerResult.rejected(LedgerResult.Status.ACCOUNT_NOT_FOUND, "One or both accounts not found.");
+            }
+
+            if (sourceBalance < amount) {
+                return LedgerResult.rejected(LedgerResult.Status.INSUFFICIENT_FUNDS, "Insufficient funds in source account.");
+            }
+
+            boolean sameAccount = sourceAccountNumber.equals(destinationAccountNumber);
+            long newDestinationBalance;
+            try {
+                // A transfer to the same account leaves its balance unchanged
+                newDestinationBalance = sameAccount ? sourceBalance : Money.add(destinationBalance, amount);
+            } catch (ArithmeticException e) {
+                return LedgerResult.rejected(LedgerResult.Status.BALANCE_OVERFLOW, "Transfer rejected. The destination balance would exceed the maximum supported amount.");
+            }
+            long newSourceBalance = sameAccount ? newDestinationBalance : Money.subtract(sourceBalance, amount);
+
+            VelocityRules.Rule brokenRule = velocityRules.check(sourceAccountNumber, TransactionType.TRANSFER_OUT, amount, System.currentTimeMillis());
+            if (brokenRule != null) {
+                return LedgerResult.rejected(LedgerResult.Status.VELOCITY_LIMIT_REACHED, brokenRule.getRejection());
+            }
+
+            Transaction transferOut = newTransaction(sourceAccountNumber, TransactionType.TRANSFER_OUT, amount, "Transfer to " + destinationAccountNumber);
+            Transaction transferIn = newTransaction(destinationAccountNumber, TransactionType.TRANSFER_IN, amount, "Transfer from " + sourceAccountNumber);
+            LedgerResult journalFailure = commit(LedgerJournal.Record.transfer(transferOut.getTimestamp(), sourceAccountNumber, destinationAccountNumber,
+                    amount, transferOut.getTransactionId(), transferIn.getTransactionId()), () -> {
+                accounts.setBalance(sourceAccountNumber, newSourceBalance);
+                accounts.setBalance(destinationAccountNumber, newDestinationBalance);
+            }, transferOut, transferIn);
+            if (journalFailure != null) {
+                return journalFailure;
+            }
+            return LedgerResult.success(sourceAccountNumber, newSourceBalance, newDestinationBalance);
+        } finally {
+            second.unlock();
+            first.unlock();
+        }
+    }
+
+    private LedgerResult performCloseAccount(String accountNumber) {
+        ReentrantLock lock = stripeFor(accountNumber);
+        lock.lock();
+        try {
+            Account account = accounts.get(accountNumber);
+            if (account == null) {
+                return LedgerResult.rejected(LedgerResult.Status.ACCOUNT_NOT_FOUND, "Account not found.");
+            }
+
+            // Implement additional checks if needed (e.g., outstanding loans).
+            if (account.getBalance() > 0) {
+                return LedgerResult.rejected(LedgerResult.Status.BALANCE_NOT_ZERO, "Please withdraw the remaining balance before closing the account.");
+            }
+
+            LedgerResult journalFailure = commit(LedgerJournal.Record.closeAccount(System.currentTimeMillis(), accountNumber), () -> {
+                accounts.remove(accountNumber);
+                accountIndex.remove(account);
+                savingsWithdrawals.remove(accountNumber);
+                velocityRules.remove(accountNumber);
+            });
+            if (journalFailure != null) {
+                return journalFailure;
+            }
+            return LedgerResult.success(accountNumber, 0L);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Credits interest for {@code period} to each account and returns one result per posting, in order.
+     * The batch is journaled as a whole, so it costs at most one fsync. A posting is refused with
+     * {@link LedgerResult.Status#ALREADY_POSTED} if the account's history has gained interest for the
+     * period since its transaction count was read, so two runs over the same month never both pay it.
+     */
+    public List<LedgerResult> postInterest(YearMonth period, List<InterestPosting> postings) {
+        long start = System.nanoTime();
+        int[] order = new int[postings.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = stripeIndex(postings.get(i).getAccountNumber());
+        }
+        Arrays.sort(order);
+        for (int i = 0; i < order.length; i++) {
+            if (i == 0 || order[i] != order[i - 1]) {
+                stripes[order[i]].lock();
+            }
+        }
+        LedgerResult journalFailure = null;
+        try {
+            String description = interestDescription(period);
+            LedgerResult[] results = new LedgerResult[postings.size()];
+            String[] credited = new String[postings.size()]; // Account numbers
+            long[] newBalances = new long[postings.size()];
+            List<LedgerJournal.Record> records = new ArrayList<>();
+            List<Transaction> recorded = new ArrayList<>();
+            Set<String> seen = new HashSet<>();
+            for (int i = 0; i < results.length; i++) {
+                InterestPosting posting = postings.get(i);
+                String accountNumber = posting.getAccountNumber();
+                long balance = accounts.getBalance(accountNumber);
+                if (balance == AccountStore.NO_ACCOUNT) {
+                    results[i] = LedgerResult.rejected(LedgerResult.Status.ACCOUNT_NOT_FOUND, "Account not found.");
+                    continue;
+                }
+                if (posting.getAmount() <= 0) {
+                    results[i] = LedgerResult.rejected(LedgerResult.Status.INVALID_AMOUNT, "Invalid interest amount. Amount must be positive.");
+                    continue;
+                }
+                if (!seen.add(accountNumber) || interestPostedSince(accountNumber, posting.getTransactionCount(), description)) {
+                    results[i] = LedgerResult.rejected(LedgerResult.Status.ALREADY_POSTED, "Interest for " + period + " has already been posted.");
+                    continue;
+                }
+                try {
+                    newBalances[i] = Money.add(balance, posting.getAmount());
+                } catch (ArithmeticException e) {
+                    results[i] = LedgerResult.rejected(LedgerResult.Status.BALANCE_OVERFLOW, "Interest rejected. The balance would exceed the maximum supported amount.");
+                    continue;
+                }
+                Transaction transaction;
+                try {
+                    transaction = newTransaction(accountNumber, TransactionType.INTEREST, posting.getAmount(), description);
+                } catch (UncheckedIOException e) {
+                    results[i] = idReservationFailure(e);
+                    continue;
+                }
+                records.add(LedgerJournal.Record.interest(transaction.getTimestamp(), accountNumber, posting.getAmount(),
+                        transaction.getTransactionId(), period.toString()));
+                recorded.add(transaction);
+                credited[i] = accountNumber;
+            }
+
+            if (!records.isEmpty()) {
+                journalFailure = commitAll(records, () -> {
+                    for (int i = 0; i < credited.length; i++) {
+                        if (credited[i] != null) {
+                            accounts.setBalance(credited[i], newBalances[i]);
+                        }
+                    }
+                }, recorded.toArray(new Transaction[0]));
+                for (int i = 0; i < credited.length; i++) {
+                    if (credited[i] != null) {
+                        results[i] = journalFailure != null ? journalFailure : LedgerResult.success(credited[i], newBalances[i]);
+                    }
+                }
+            }
+            return Arrays.asList(results);
+        } finally {
+            for (int i = order.length - 1; i >= 0; i--) {
+                if (i == 0 || order[i] != order[i - 1]) {
+                    stripes[order[i]].unlock();
+                }
+            }
+            metrics.record(LedgerMetrics.Operation.POST_INTEREST,
+                    journalFailure != null ? LedgerResult.Status.JOURNAL_FAILURE : LedgerResult.Status.SUCCESS, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Description of the transaction that pays interest for {@code period}, which is also how a posting
+     * is recognised in the history.
+     */
+    public static String interestDescription(YearMonth period) {
+        return "Interest for " + period;
+    }
+
+    // --- Queries ---
+
+    public Account findAccount(String accountNumber) {
+        return accounts.get(accountNumber);
+    }
+
+    public int accountCount() {
+        return accounts.size();
+    }
+
+    /**
+     * Open accounts whose phone number has the same digits as {@code phoneNumber}, ignoring spaces and
+     * punctuation. Costs O(matches).
+     */
+    public List<Account> findAccountsByPhoneNumber(String phoneNumber) {
+        long start = System.nanoTime();
+        List<Account> found = findAccounts(accountIndex.findByPhoneNumber(phoneNumber));
+        metrics.record(LedgerMetrics.Operation.SEARCH, LedgerResult.Status.SUCCESS, System.nanoTime() - start);
+        return found;
+    }
+
+    /**
+     * Up to {@code limit} open accounts with a name, or a word in it, starting with {@code prefix},
+     * ignoring case, in name order. Costs O(log accounts + limit).
+     */
+    public List<Account> findAccountsByNamePrefix(String prefix, int limit) {
+        long start = System.nanoTime();
+        List<Account> found = findAccounts(accountIndex.findByNamePrefix(prefix, limit));
+        metrics.record(LedgerMetrics.Operation.SEARCH, LedgerResult.Status.SUCCESS, System.nanoTime() - start);
+        return found;
+    }
+
+    /**
+     * Numbers of the accounts open right now, in no particular order.
+     */
+    public List<String> accountNumbers() {
+        List<String> accountNumbers = new ArrayList<>(accounts.size());
+        accounts.forEach(account -> accountNumbers.add(account.getAccountNumber()));
+        return accountNumbers;
+    }
+
+    /**
+     * The account together with its transactions back to {@code sinceMillis}, or null if there is no
+     * such account. The account's stripe is held throughout, so nothing can change it between reading
+     * the balance and reading the history; the history is read a page at a time under the ledger lock,
+     * so other accounts are held up only briefly.
+     */
+    public AccountActivity accountActivity(String accountNumber, long sinceMillis) {
+        ReentrantLock lock = stripeFor(accountNumber);
+        lock.lock();
+        try {
+            Account account = accounts.get(accountNumber);
+            if (account == null) {
+                return null;
+            }
+            List<Transaction> transactions = new ArrayList<>();
+            int transactionCount;
+            long cursor = TransactionStore.NEWEST;
+            while (true) {
+                HistoryPage page;
+                ledgerLock.lock();
+                try {
+                    transactionCount = transactionStore.count(accountNumber);
+                    page = transactionStore.page(accountNumber, cursor, ACTIVITY_PAGE_SIZE);
+                } finally {
+                    ledgerLock.unlock();
+                }
+                for (Transaction transaction : page.getTransactions()) {
+                    if (transaction.getTimestamp() < sinceMillis) {
+                        return new AccountActivity(copyOf(account), transactionCount, transactions);
+                    }
+                    transactions.add(transaction);
+                }
+                if (!page.hasNext()) {
+                    return new AccountActivity(copyOf(account), transactionCount, transactions);
+                }
+                cursor = page.getNextCursor();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Up to {@code pageSize} of the account's transactions, newest first. Pass
+     * {@link TransactionStore#NEWEST} for the first page and {@link HistoryPage#getNextCursor()} for the
+     * ones after it. Costs O(pageSize).
+     *
+     * @throws IllegalArgumentException if {@code cursor} is not a cursor of this account's history
+     */
+    public HistoryPage transactionHistoryPage(String accountNumber, long cursor, int pageSize) {
+        long start = System.nanoTime();
+        HistoryPage page;
+        ledgerLock.lock();
+        try {
+            page = transactionStore.page(accountNumber, cursor, pageSize);
+        } finally {
+            ledgerLock.unlock();
+        }
+        metrics.record(LedgerMetrics.Operation.HISTORY_PAGE, LedgerResult.Status.SUCCESS, System.nanoTime() - start);
+        return page;
+    }
+
+    /**
+     * The account's balance as {@code render} shows it, or null if there is no such account. The text is
+     * cached under {@code format}, which names the renderer, until the account next changes, so
+     * {@code render} must depend only on the account it is given: a copy with a single balance.
+     */
+    public String balanceView(String accountNumber, String format, Function<Account, String> render) {
+        long start = System.nanoTime();
+        AccountViewCache cache = viewCache;
+        AccountViewCache.View cached = cache.getBalance(accountNumber, format);
+        String text;
+        if (cached != null) {
+            text = cached.getText();
+        } else {
+            long version = cache.version(accountNumber); // Before the read, so a change applied meanwhile keeps the view out
+            Account account = accounts.get(accountNumber);
+            text = account == null ? null : render.apply(copyOf(account));
+            if (text != null) {
+                cache.putBalance(accountNumber, format, version, text);
+            }
+        }
+        metrics.record(LedgerMetrics.Operation.BALANCE, text != null ? LedgerResult.Status.SUCCESS : LedgerResult.Status.ACCOUNT_NOT_FOUND,
+                System.nanoTime() - start);
+        return text;
+    }
+
+    /**
+     * {@link #transactionHistoryPage} together with the page as {@code render} shows it, cached under
+     * {@code format} until the account next changes. {@code render} must depend only on the page.
+     *
+     * @throws IllegalArgumentException if {@code cursor} is not a cursor of this account's history
+     */
+    public AccountViewCache.View historyPageView(String accountNumber, long cursor, int pageSize, String format, Function<HistoryPage, String> render) {
+        long start = System.nanoTime();
+        AccountViewCache cache = viewCache;
+        AccountViewCache.View view = cache.getHistoryPage(accountNumber, format, cursor, pageSize);
+        if (view == null) {
+            long version = cache.version(accountNumber);
+            HistoryPage page;
+            ledgerLock.lock();
+            try {
+                page = transactionStore.page(accountNumber, cursor, pageSize);
+            } finally {
+                ledgerLock.unlock();
+            }
+            view = new AccountViewCache.View(render.apply(page), page);
+            cache.putHistoryPage(accountNumber, format, cursor, pageSize, version, view);
+        }
+        metrics.record(LedgerMetrics.Operation.HISTORY_PAGE, LedgerResult.Status.SUCCESS, System.nanoTime() - start);
+        return view;
+    }
+
+    public long transactionCount() {
+        ledgerLock.lock();
+        try {
+            return transactionStore.size();
+        } finally {
+            ledgerLock.unlock();
+        }
+    }
+
+    /**
+     * Exact sum of all balances, in cents. Only consistent while no mutations are running.
+     */
+    public long totalBalance() {
+        long[] total = {0L};
+        accounts.forEach(account -> total[0] = Money.add(total[0], account.getBalance()));
+        return total[0];
+    }
+
+    // In cents
+    public static long getMinimumInitialDeposit(AccountType accountType) {
+        return switch (accountType) {
+            case SAVINGS -> 50_00L;
+            case CHECKING -> 0L; // Some checking accounts might have no minimum
+            default -> 0L; // Default to zero in case of unexpected types
+        };
+    }
+
+    // --- Snapshot and journal support ---
+
+    /**
+     * Replaces the whole state with snapshot contents, appending the transactions to the current
+     * transaction store, and rebuilds the derived state.
+     */
+    public void restore(Map<String, Account> loadedAccounts, List<Transaction> loadedTransactions) {
+        ledgerLock.lock();
+        try {
+            accounts.clear();
+            loadedAccounts.values().forEach(accounts::add);
+            accountIndex.clear();
+            loadedAccounts.values().forEach(accountIndex::add);
+            viewCache.clear();
+            transactionStore.clear();
+            savingsWithdrawals.clear(); // Restored from the rows' timestamps, so only this month's withdrawals count
+            velocityRules.clear(); // Likewise only recent debits stay in the windows
+            for (Transaction transaction : loadedTransactions) {
+                transactionStore.append(transaction);
+                countSavingsWithdrawal(transaction);
+                velocityRules.record(transaction);
+            }
+        } finally {
+            ledgerLock.unlock();
+        }
+    }
+
+    /**
+     * Replaces the accounts and switches to a transaction store that already holds the history. Only
+     * this month's rows of SAVINGS accounts are read, to rebuild the withdrawal counters, and each
+     * account's rows within the longest velocity rule window.
+     */
+    public void restore(Map<String, Account> loadedAccounts, TransactionStore loadedTransactions) {
+        ledgerLock.lock();
+        try {
+            accounts.clear();
+            loadedAccounts.values().forEach(accounts::add);
+            accountIndex.clear();
+            loadedAccounts.values().forEach(accountIndex::add);
+            viewCache.clear();
+            transactionStore = loadedTransactions;
+            savingsWithdrawals.clear();
+            velocityRules.clear();
+            long now = System.currentTimeMillis();
+            long monthStart = savingsWithdrawals.monthStart(now);
+            long windowStart = now - velocityRules.getLongestWindowMillis();
+            for (Account account : loadedAccounts.values()) {
+                boolean savings = account.getAccountType() == AccountType.SAVINGS;
+                if (!savings && velocityRules.isEmpty()) {
+                    continue;
+                }
+                long since = savings ? Math.min(monthStart, windowStart) : windowStart;
+                transactionStore.forEachNewestFirst(account.getAccountNumber(), transaction -> {
+                    if (transaction.getTimestamp() < since) {
+                        return false; // Older rows cannot count towards this month's limit or any window
+                    }
+                    if (transaction.getTimestamp() >= monthStart) {
+                        countSavingsWithdrawal(transaction);
+                    }
+                    velocityRules.record(transaction);
+                    return true;
+                });
+            }
+        } finally {
+            ledgerLock.unlock();
+        }
+    }
+
+    /**
+     * Switches to the transaction store {@code replacement} makes from the current one. It runs with
+     * every stripe and the ledger lock held, so no operation runs meanwhile and the accounts, the history
+     * and the journal hold still while it reads them. For compaction, which rewrites the whole history.
+     */
+    public void replaceTransactionStore(UnaryOperator<TransactionStore> replacement) {
+        for (ReentrantLock stripe : stripes) {
+            stripe.lock();
+        }
+        ledgerLock.lock();
+        try {
+            transactionStore = replacement.apply(transactionStore);
+            viewCache.clear();
+        } finally {
+            ledgerLock.unlock();
+            for (int i = stripes.length - 1; i >= 0; i--) {
+                stripes[i].unlock();
+            }
+        }
+    }
+
+    /**
+     * A copy of every account as of a single point in the order of changes, taken while mutations keep
+     * running; they are held up only while that point is marked. {@code atCut} runs at the point itself,
+     * under the ledger lock, with the LSN of the last journal record the copy includes (0 without a
+     * journal), so other state can be cut at the same place.
+     */
+    public Map<String, Account> snapshotAccounts(LongConsumer atCut) {
+        AccountsCut cut = new AccountsCut();
+        ledgerLock.lock();
+        try {
+            LedgerJournal current = journal;
+            atCut.accept(current != null ? current.lastLsn() : 0L);
+            accountsCut = cut;
+        } finally {
+            ledgerLock.unlock();
+        }
+
+        try {
+            Map<String, Account> snapshot = new HashMap<>(Math.max(16, (int) (accounts.size() / 0.75f) + 1));
+            accounts.forEach(account -> snapshot.put(account.getAccountNumber(), copyOf(account)));
+            // A change saves the previous state before it is applied, so any account read above in its
+            // changed state has its pre-image here by now
+            cut.preImages.forEach((accountNumber, preImage) -> {
+                if (preImage == AccountsCut.ABSENT) {
+                    snapshot.remove(accountNumber);
+                } else {
+                    snapshot.put(accountNumber, preImage);
+                }
+            });
+            return snapshot;
+        } finally {
+            accountsCut = null;
+        }
+    }
+
+    /**
+     * Re-applies a journal record on startup. The flags say which halves of the state the loaded
+     * snapshots do not already contain.
+     */
+    public void applyJournalRecord(LedgerJournal.Record record, boolean applyToAccounts, boolean applyToTransactions) {
+        String accountNumber = record.getAccountNumber();
+        long amount = record.getAmount();
+        long timestamp = record.getTimestamp();
+
+        switch (record.getType()) {
+            case OPEN_ACCOUNT -> {
+                if (applyToAccounts) {
+                    Account account = new Account(accountNumber, record.getName(), record.getAddress(),
+                            record.getPhoneNumber(), amount, AccountType.valueOf(record.getAccountType()));
+                    Account replaced = accounts.put(account);
+                    if (replaced != null) {
+                        accountIndex.remove(replaced);
+                    }
+                    accountIndex.add(account);
+                }
+                if (applyToTransactions) {
+                    recordTransactions(new Transaction(record.getTransactionId(), timestamp, accountNumber, TransactionType.DEPOSIT, amount, "Initial deposit"));
+                }
+            }
+            case DEPOSIT -> {
+                if (applyToAccounts) {
+                    adjustBalance(accountNumber, amount);
+                }
+                if (applyToTransactions) {
+                    recordTransactions(new Transaction(record.getTransactionId(), timestamp, accountNumber, TransactionType.DEPOSIT, amount, "Deposit"));
+                }
+            }
+            case WITHDRAWAL -> {
+                if (applyToAccounts) {
+                    adjustBalance(accountNumber, -amount);
+                }
+                if (applyToTransactions) {
+                    recordTransactions(new Transaction(record.getTransactionId(), timestamp, accountNumber, TransactionType.WITHDRAWAL, amount, "Withdrawal"));
+                }
+            }
+            case TRANSFER -> {
+                String destinationAccountNumber = record.getCounterpartyNumber();
+                if (applyToAccounts) {
+                    adjustBalance(accountNumber, -amount);
+                    adjustBalance(destinationAccountNumber, amount);
+                }
+                if (applyToTransactions) {
+                    recordTransactions(
+                            new Transaction(record.getTransactionId(), timestamp, accountNumber, TransactionType.TRANSFER_OUT, amount, "Transfer to " + destinationAccountNumber),
+                            new Transaction(record.getCounterTransactionId(), timestamp, destinationAccountNumber, TransactionType.TRANSFER_IN, amount, "Transfer from " + accountNumber));
+                }
+            }
+            case CLOSE_ACCOUNT -> {
+                if (applyToAccounts) {
+                    Account closed = accounts.remove(accountNumber);
+                    if (closed != null) {
+                        accountIndex.remove(closed);
+                    }
+                    savingsWithdrawals.remove(accountNumber);
+                    velocityRules.remove(accountNumber);
+                }
+            }
+            case INTEREST -> {
+                if (applyToAccounts) {
+                    adjustBalance(accountNumber, amount);
+                }
+                if (applyToTransactions) {
+                    recordTransactions(new Transaction(record.getTransactionId(), timestamp, accountNumber, TransactionType.INTEREST, amount,
+                            interestDescription(YearMonth.parse(record.getName()))));
+                }
+            }
+        }
+        invalidateViews(record);
+    }
+
+    // --- Internals ---
+
+    private void adjustBalance(String accountNumber, long delta) {
+        long balance = accounts.getBalance(accountNumber);
+        if (balance != AccountStore.NO_ACCOUNT) {
+            accounts.setBalance(accountNumber, Money.add(balance, delta));
+        }
+    }
+
+    // Write-ahead: journals the record, applies the change and records its transactions as one step in
+    // the order of changes, then waits until the record is durable. Returns null on success, or the
+    // rejection to hand back if the journal failed; if it failed before taking the record, nothing is
+    // applied. Callers hold the stripes of the accounts the record names.
+    private LedgerResult commit(LedgerJournal.Record record, Runnable apply, Transaction... recorded) {
+        LedgerJournal current;
+        long lsn = 0L;
+        ledgerLock.lock();
+        try {
+            current = journal;
+            if (current != null) {
+                try {
+                    lsn = current.append(record);
+                } catch (IOException e) {
+                    return LedgerResult.rejected(LedgerResult.Status.JOURNAL_FAILURE, "Error writing journal: " + e.getMessage() + ". Operation cancelled.");
+                }
+            }
+
+            preserveForCut(record);
+            apply.run();
+            recordTransactions(recorded);
+            invalidateViews(record);
+        } finally {
+            ledgerLock.unlock();
+        }
+        return awaitDurable(current, lsn);
+    }
+
+    // commit for a batch of records, journaled together.
+    private LedgerResult commitAll(List<LedgerJournal.Record> records, Runnable apply, Transaction... recorded) {
+        LedgerJournal current;
+        long lsn = 0L;
+        ledgerLock.lock();
+        try {
+            current = journal;
+            if (current != null) {
+                try {
+                    lsn = current.appendAll(records);
+                } catch (IOException e) {
+                    return LedgerResult.rejected(LedgerResult.Status.JOURNAL_FAILURE, "Error writing journal: " + e.getMessage() + ". Operation cancelled.");
+                }
+            }
+
+            for (LedgerJournal.Record record : records) {
+                preserveForCut(record);
+            }
+            apply.run();
+            recordTransactions(recorded);
+            for (LedgerJournal.Record record : records) {
+                invalidateViews(record);
+            }
+        } finally {
+            ledgerLock.unlock();
+        }
+        return awaitDurable(current, lsn);
+    }
+
+    // The wait for the fsync happens outside the ledger lock, so changes to other accounts can join the
+    // same one; callers still hold their stripes. A later change can only become durable after this one,
+    // so nothing acknowledged ever depends on a change that is lost. If the journal fails here the change
+    // has been applied in memory, but the journal accepts nothing more and checkpoints skip it.
+    private static LedgerResult awaitDurable(LedgerJournal current, long lsn) {
+        if (current != null) {
+            try {
+                current.awaitDurable(lsn);
+            } catch (IOException e) {
+                return LedgerResult.rejected(LedgerResult.Status.JOURNAL_FAILURE, "Error writing journal: " + e.getMessage()
+                        + ". The operation may not have been saved; no further changes are accepted until restart.");
+            }
+        }
+        return null;
+    }
+
+    private void preserveForCut(LedgerJournal.Record record) {
+        AccountsCut cut = accountsCut;
+        if (cut != null) {
+            cut.preserve(record.getAccountNumber(), accounts.get(record.getAccountNumber()));
+            if (!record.getCounterpartyNumber().isEmpty()) {
+                cut.preserve(record.getCounterpartyNumber(), accounts.get(record.getCounterpartyNumber()));
+            }
+        }
+    }
+
+    private void invalidateViews(LedgerJournal.Record record) {
+        viewCache.invalidate(record.getAccountNumber());
+        if (!record.getCounterpartyNumber().isEmpty()) {
+            viewCache.invalidate(record.getCounterpartyNumber());
+        }
+    }
+
+    // Whether any of the account's transactions after the first transactionCount is interest with this description.
+    private boolean interestPostedSince(String accountNumber, int transactionCount, String description) {
+        ledgerLock.lock();
+        try {
+            int[] newer = {transactionStore.count(accountNumber) - transactionCount};
+            boolean[] found = {false};
+            if (newer[0] > 0) {
+                transactionStore.forEachNewestFirst(accountNumber, transaction -> {
+                    if (transaction.getTransactionType() == TransactionType.INTEREST && transaction.getDescription().equals(description)) {
+                        found[0] = true;
+                        return false;
+                    }
+                    return --newer[0] > 0;
+                });
+            }
+            return found[0];
+        } finally {
+            ledgerLock.unlock();
+        }
+    }
+
+    // Every path that adds history goes through here so the withdrawal counters and velocity windows
+    // never fall behind it.
+    private void recordTransactions(Transaction... recorded) {
+        ledgerLock.lock();
+        try {
+            for (Transaction transaction : recorded) {
+                transactionStore.append(transaction);
+                countSavingsWithdrawal(transaction);
+                velocityRules.record(transaction);
+            }
+        } finally {
+            ledgerLock.unlock();
+        }
+    }
+
+    private void countSavingsWithdrawal(Transaction transaction) {
+        if (transaction.getTransactionType() == TransactionType.WITHDRAWAL) {
+            if (accounts.getAccountType(transaction.getAccountNumber()) == AccountType.SAVINGS) {
+                savingsWithdrawals.record(transaction.getAccountNumber(), transaction.getTimestamp());
+            }
+        }
+    }
+
+    // Accounts closed since the index was read are left out
+    private List<Account> findAccounts(List<String> accountNumbers) {
+        List<Account> found = new ArrayList<>(accountNumbers.size());
+        for (String accountNumber : accountNumbers) {
+            Account account = accounts.get(accountNumber);
+            if (account != null) {
+                found.add(account);
+            }
+        }
+        return found;
+    }
+
+    private static Account copyOf(Account account) {
+        return new Account(account.getAccountNumber(), account.getName(), account.getAddress(), account.getPhoneNumber(),
+                account.getBalance(), account.getAccountType());
+    }
+
+    private ReentrantLock stripeFor(String accountNumber) {
+        return stripes[stripeIndex(accountNumber)];
+    }
+
+    private int stripeIndex(String accountNumber) {
+        int hash = accountNumber.hashCode();
+        return (hash ^ (hash >>> 16)) & stripeMask;
+    }
+
+    private Transaction newTransaction(String accountNumber, TransactionType transactionType, long amount, String description) {
+        return new Transaction(ids.nextTransactionId(), System.currentTimeMillis(), accountNumber, transactionType, amount, description);
+    }
+
+    private static LedgerResult idReservationFailure(UncheckedIOException e) {
+        return LedgerResult.rejected(LedgerResult.Status.JOURNAL_FAILURE, "Error reserving IDs: " + e.getCause().getMessage() + ". Operation cancelled.");
+    }
+}
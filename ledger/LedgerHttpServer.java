@@ -0,0 +1,324 @@
+package ledger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves a {@link LedgerEngine} as JSON over HTTP on the JDK's built-in server. Every exchange runs on its
+ * own virtual thread and goes through the same engine operations as the console, so the same rules and
+ * the same journal apply.
+ * <pre>
+ * POST /accounts                        {"name", "address", "phoneNumber", "initialDeposit", "accountType"}
+ * GET  /accounts/{number}               balance
+ * POST /accounts/{number}/deposit       {"amount"}
+ * POST /accounts/{number}/withdraw      {"amount"}
+ * POST /transfers                       {"from", "to", "amount"}
+ * GET  /accounts/{number}/transactions  ?limit=&amp;cursor=, newest first
+ * GET  /metrics                         {@link LedgerMetrics} and {@link VelocityRules} hits as plain text tables
+ * </pre>
+ * Amounts are sent as strings or numbers with at most two decimal places and returned as strings such as
+ * {@code "12.50"}. A history response carries {@code nextCursor} while there are older transactions.
+ * Rejections are {@code {"status": "INSUFFICIENT_FUNDS", "message": "..."}} with a 4xx code, or 503 when
+ * the journal cannot be written.
+ */
+public final class LedgerHttpServer {
+
+    public static final int DEFAULT_PAGE_SIZE = 10;
+    public static final int MAX_PAGE_SIZE = 100;
+
+    private static final int BACKLOG = 1024;
+    private static final int MAX_BODY_BYTES = 16 * 1024;
+
+    static {
+        // The JDK server writes headers and body separately; with Nagle on, a small response waits for
+        // the client's delayed ACK, which put ~40 ms on every request. Read once, when the first server is created.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private static final class Response {
+        private final int status;
+        private final String contentType;
+        private final String body;
+
+        private Response(int status, String body) {
+            this(status, "application/json; charset=utf-8", body);
+        }
+
+        private Response(int status, String contentType, String body) {
+            this.status = status;
+            this.contentType = contentType;
+            this.body = body;
+        }
+    }
+
+    private interface Route {
+        Response handle(HttpExchange exchange, String[] path) throws IOException;
+    }
+
+    private final LedgerEngine engine;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * Binds to {@code address}; requests are served once {@link #start()} is called. Port 0 picks a free port.
+     */
+    public LedgerHttpServer(LedgerEngine engine, InetSocketAddress address) throws IOException {
+        this.engine = engine;
+        server = HttpServer.create(address, BACKLOG);
+        server.setExecutor(executor);
+        server.createContext("/accounts", exchange -> serve(exchange, this::accounts));
+        server.createContext("/transfers", exchange -> serve(exchange, this::transfers));
+        server.createContext("/metrics", exchange -> serve(exchange, this::metrics));
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    /**
+     * Stops accepting connections and waits up to {@code delaySeconds} for exchanges in progress.
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.close();
+    }
+
+    private void serve(HttpExchange exchange, Route route) throws IOException {
+        try (exchange) {
+            Response response;
+            try {
+                String path = exchange.getRequestURI().getPath();
+                response = route.handle(exchange, path.substring(1).split("/", -1));
+            } catch (IllegalArgumentException e) { // Includes NumberFormatException from amounts
+                response = error(400, "MALFORMED", e.getMessage());
+            } catch (RuntimeException e) {
+                System.err.println("Error serving " + exchange.getRequestMethod() + " " + exchange.getRequestURI() + ": " + e);
+                response = error(500, "INTERNAL_ERROR", "Internal error.");
+            }
+
+            byte[] body = response.body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", response.contentType);
+            exchange.sendResponseHeaders(response.status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    // --- Routes ---
+
+    // path is ["accounts"], ["accounts", number] or ["accounts", number, action]
+    private Response accounts(HttpExchange exchange, String[] path) throws IOException {
+        if (!path[0].equals("accounts")) {
+            return notFound();
+        }
+        String method = exchange.getRequestMethod();
+        if (path.length == 1) {
+            return method.equals("POST") ? createAccount(readBody(exchange)) : methodNotAllowed();
+        }
+        String accountNumber = path[1];
+        if (path.length == 2) {
+            return method.equals("GET") ? balance(accountNumber) : methodNotAllowed();
+        }
+        if (path.length > 3) {
+            return notFound();
+        }
+        switch (path[2]) {
+            case "deposit" -> {
+                if (!method.equals("POST")) {
+                    return methodNotAllowed();
+                }
+                LedgerResult result = engine.deposit(accountNumber, amount(readBody(exchange), "amount"));
+                return result.isSuccess() ? balanceResponse(200, result.getAccountNumber(), result.getBalance()) : rejected(result);
+            }
+            case "withdraw" -> {
+                if (!method.equals("POST")) {
+                    return methodNotAllowed();
+                }
+                LedgerResult result = engine.withdraw(accountNumber, amount(readBody(exchange), "amount"));
+                return result.isSuccess() ? balanceResponse(200, result.getAccountNumber(), result.getBalance()) : rejected(result);
+            }
+            case "transactions" -> {
+                return method.equals("GET") ? history(accountNumber, queryParameters(exchange)) : methodNotAllowed();
+            }
+            default -> {
+                return notFound();
+            }
+        }
+    }
+
+    private Response transfers(HttpExchange exchange, String[] path) throws IOException {
+        if (path.length != 1 || !path[0].equals("transfers")) {
+            return notFound();
+        }
+        if (!exchange.getRequestMethod().equals("POST")) {
+            return methodNotAllowed();
+        }
+        Map<String, String> body = readBody(exchange);
+        String source = required(body, "from");
+        String destination = required(body, "to");
+        LedgerResult result = engine.transferFunds(source, destination, amount(body, "amount"));
+        if (!result.isSuccess()) {
+            return rejected(result);
+        }
+        return new Response(200, "{\"from\":" + Json.quote(source)
+                + ",\"to\":" + Json.quote(destination)
+                + ",\"fromBalance\":" + Json.quote(Money.format(result.getBalance()))
+                + ",\"toBalance\":" + Json.quote(Money.format(result.getCounterpartyBalance())) + "}");
+    }
+
+    private Response metrics(HttpExchange exchange, String[] path) {
+        if (path.length != 1 || !path[0].equals("metrics")) {
+            return notFound();
+        }
+        if (!exchange.getRequestMethod().equals("GET")) {
+            return methodNotAllowed();
+        }
+        return new Response(200, "text/plain; charset=utf-8", engine.getMetrics().toString() + engine.getVelocityRules() + engine.getViewCache());
+    }
+
+    private Response createAccount(Map<String, String> body) {
+        AccountType accountType = AccountType.valueOf(required(body, "accountType").trim().toUpperCase(Locale.ROOT));
+        LedgerResult result = engine.createAccount(required(body, "name"), required(body, "address"),
+                required(body, "phoneNumber"), amount(body, "initialDeposit"), accountType);
+        return result.isSuccess() ? balanceResponse(201, result.getAccountNumber(), result.getBalance()) : rejected(result);
+    }
+
+    private Response balance(String accountNumber) {
+        String body = engine.balanceView(accountNumber, "json", account -> "{\"accountNumber\":" + Json.quote(account.getAccountNumber())
+                + ",\"name\":" + Json.quote(account.getName())
+                + ",\"accountType\":" + Json.quote(account.getAccountType().name())
+                + ",\"balance\":" + Json.quote(Money.format(account.getBalance())) + "}");
+        if (body == null) {
+            return error(404, LedgerResult.Status.ACCOUNT_NOT_FOUND.name(), "Account not found.");
+        }
+        return new Response(200, body);
+    }
+
+    private Response history(String accountNumber, Map<String, String> query) {
+        if (engine.findAccount(accountNumber) == null) {
+            return error(404, LedgerResult.Status.ACCOUNT_NOT_FOUND.name(), "Account not found.");
+        }
+        int limit = query.containsKey("limit") ? Integer.parseInt(query.get("limit")) : DEFAULT_PAGE_SIZE;
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        long cursor = query.containsKey("cursor") ? Long.parseLong(query.get("cursor")) : TransactionStore.NEWEST;
+
+        return new Response(200, engine.historyPageView(accountNumber, cursor, limit, "json",
+                page -> historyJson(accountNumber, page)).getText());
+    }
+
+    private static String historyJson(String accountNumber, HistoryPage page) {
+        StringBuilder json = new StringBuilder(128 + 160 * page.getTransactions().size());
+        json.append("{\"accountNumber\":").append(Json.quote(accountNumber)).append(",\"transactions\":[");
+        boolean first = true;
+        for (Transaction transaction : page.getTransactions()) {
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            json.append("{\"transactionId\":").append(Json.quote(transaction.getTransactionId()))
+                    .append(",\"timestamp\":").append(Json.quote(Instant.ofEpochMilli(transaction.getTimestamp()).toString()))
+                    .append(",\"type\":").append(Json.quote(transaction.getTransactionType().name()))
+                    .append(",\"amount\":").append(Json.quote(Money.format(transaction.getAmount())))
+                    .append(",\"description\":").append(Json.quote(transaction.getDescription()))
+                    .append('}');
+        }
+        // The cursor is opaque to clients; a string keeps it exact in JavaScript too
+        json.append("],\"nextCursor\":").append(page.hasNext() ? Json.quote(Long.toString(page.getNextCursor())) : "null").append('}');
+        return json.toString();
+    }
+
+    // --- Requests and responses ---
+
+    private static Map<String, String> readBody(HttpExchange exchange) throws IOException {
+        byte[] bytes;
+        try (InputStream in = exchange.getRequestBody()) {
+            bytes = in.readNBytes(MAX_BODY_BYTES + 1);
+        }
+        if (bytes.length > MAX_BODY_BYTES) {
+            throw new IllegalArgumentException("Request body larger than " + MAX_BODY_BYTES + " bytes");
+        }
+        return Json.parseObject(new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    private static Map<String, String> queryParameters(HttpExchange exchange) {
+        Map<String, String> parameters = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null || query.isEmpty()) {
+            return parameters;
+        }
+        for (String parameter : query.split("&")) {
+            int equals = parameter.indexOf('=');
+            String name = equals < 0 ? parameter : parameter.substring(0, equals);
+            String value = equals < 0 ? "" : parameter.substring(equals + 1);
+            parameters.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return parameters;
+    }
+
+    private static String required(Map<String, String> body, String name) {
+        String value = body.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing field: " + name);
+        }
+        return value;
+    }
+
+    // Same rule as the console: non-negative, at most two decimal places
+    private static long amount(Map<String, String> body, String name) {
+        long amount = Money.parse(required(body, name));
+        if (amount < 0) {
+            throw new IllegalArgumentException("Amount must be non-negative: " + name);
+        }
+        return amount;
+    }
+
+    private static Response balanceResponse(int status, String accountNumber, long balance) {
+        return new Response(status, "{\"accountNumber\":" + Json.quote(accountNumber)
+                + ",\"balance\":" + Json.quote(Money.format(balance)) + "}");
+    }
+
+    private static Response rejected(LedgerResult result) {
+        int status = switch (result.getStatus()) {
+            case INVALID_AMOUNT, BELOW_MINIMUM_DEPOSIT, FIELD_TOO_LONG -> 400;
+            case ACCOUNT_NOT_FOUND -> 404;
+            case INSUFFICIENT_FUNDS, SAVINGS_LIMIT_REACHED, VELOCITY_LIMIT_REACHED, BALANCE_OVERFLOW, BALANCE_NOT_ZERO, ALREADY_POSTED -> 409;
+            case JOURNAL_FAILURE -> 503;
+            case SUCCESS -> throw new IllegalStateException("Not a rejection");
+        };
+        return error(status, result.getStatus().name(), result.getMessage());
+    }
+
+    private static Response notFound() {
+        return error(404, "NOT_FOUND", "No such endpoint.");
+    }
+
+    private static Response methodNotAllowed() {
+        return error(405, "METHOD_NOT_ALLOWED", "Method not allowed for this endpoint.");
+    }
+
+    private static Response error(int status, String code, String message) {
+        return new Response(status, "{\"status\":" + Json.quote(code) + ",\"message\":" + Json.quote(String.valueOf(message)) + "}");
+    }
+}
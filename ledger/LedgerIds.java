@@ -0,0 +1,164 @@
+package ledger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Account numbers and transaction IDs from two monotonic sequences of longs, formatted as text only when
+ * an ID is handed to the rest of the ledger.
+ *
+ * Sequences are reserved in blocks: before the first ID of a block is handed out, the end of the block
+ * is written to the high-water mark file and forced to disk. After a restart, even a crash, both
+ * sequences continue from the marks, so no ID is ever handed out twice; at most the rest of a block is
+ * skipped. Account blocks are small so a restart does not move account numbers far ahead. Without a
+ * file the sequences start afresh, for engines kept in memory only.
+ * <pre>
+ * [int magic][int version][long account mark][long transaction mark][int crc32]
+ * </pre>
+ * Account numbers are ten digits starting at {@code 1000000001}; transaction IDs are twelve digits. IDs
+ * made by earlier versions are eight hex characters, so the two can never be equal.
+ */
+public final class LedgerIds {
+
+    public static final int ACCOUNT_BLOCK_SIZE = 64;
+    public static final int TRANSACTION_BLOCK_SIZE = 4096;
+
+    private static final int MAGIC = 0x424B4944; // "BKID"
+    private static final long FIRST_ACCOUNT_ID = 1_000_000_001L;
+    private static final long LAST_ACCOUNT_ID = 9_999_999_999L;
+    private static final long FIRST_TRANSACTION_ID = 1L;
+    private static final long LAST_TRANSACTION_ID = 999_999_999_999L;
+    private static final int TRANSACTION_ID_DIGITS = 12;
+
+    private final Path file;
+    private final IOException unavailable; // Why no IDs can be reserved, if the marks could not be read
+    private final AtomicLong nextAccountId;
+    private final AtomicLong nextTransactionId;
+    // IDs below these may be handed out; both are on disk whenever there is a file
+    private volatile long accountMark;
+    private volatile long transactionMark;
+
+    private LedgerIds(Path file, long accountMark, long transactionMark, IOException unavailable) {
+        this.file = file;
+        this.unavailable = unavailable;
+        this.accountMark = accountMark;
+        this.transactionMark = transactionMark;
+        nextAccountId = new AtomicLong(Math.max(FIRST_ACCOUNT_ID, accountMark));
+        nextTransactionId = new AtomicLong(Math.max(FIRST_TRANSACTION_ID, transactionMark));
+    }
+
+    /**
+     * Sequences that are not persisted.
+     */
+    public static LedgerIds inMemory() {
+        return new LedgerIds(null, FIRST_ACCOUNT_ID, FIRST_TRANSACTION_ID, null);
+    }
+
+    /**
+     * Sequences that refuse every ID, for when the marks in {@code file} could not be read: starting
+     * afresh could repeat IDs already in use.
+     */
+    public static LedgerIds unavailable(Path file, IOException cause) {
+        return new LedgerIds(file, 0L, 0L, cause); // Marks of 0 send every call to reserve
+    }
+
+    /**
+     * Sequences continuing from the marks in {@code file}, or from the start if it does not exist yet.
+     */
+    public static LedgerIds open(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return new LedgerIds(file, FIRST_ACCOUNT_ID, FIRST_TRANSACTION_ID, null);
+        }
+        try (BinarySnapshots.Reader in = new BinarySnapshots.Reader(file)) {
+            int magic = in.getInt();
+            int version = in.getInt();
+            if (magic != MAGIC || version != BinarySnapshots.FORMAT_VERSION) {
+                throw new IOException("Not an ID high-water mark file: " + file);
+            }
+            long accountMark = in.getLong();
+            long transactionMark = in.getLong();
+            in.verifyChecksum();
+            return new LedgerIds(file, Math.max(FIRST_ACCOUNT_ID, accountMark), Math.max(FIRST_TRANSACTION_ID, transactionMark), null);
+        }
+    }
+
+    /**
+     * @throws UncheckedIOException if a new block has to be reserved and the mark cannot be written
+     */
+    public String nextAccountNumber() {
+        long id = nextAccountId.getAndIncrement();
+        if (id >= accountMark) {
+            reserve(id, true);
+        }
+        if (id > LAST_ACCOUNT_ID) {
+            throw new IllegalStateException("Account numbers exhausted");
+        }
+        return Long.toString(id);
+    }
+
+    /**
+     * @throws UncheckedIOException if a new block has to be reserved and the mark cannot be written
+     */
+    public String nextTransactionId() {
+        long id = nextTransactionId.getAndIncrement();
+        if (id >= transactionMark) {
+            reserve(id, false);
+        }
+        if (id > LAST_TRANSACTION_ID) {
+            throw new IllegalStateException("Transaction IDs exhausted");
+        }
+        return zeroPadded(id, TRANSACTION_ID_DIGITS);
+    }
+
+    // Moves the mark past id, unless another thread already has. Only the thread that finds the mark
+    // behind writes the file, so concurrent callers past the same block wait for one write.
+    private synchronized void reserve(long id, boolean account) {
+        if (unavailable != null) {
+            throw new UncheckedIOException("ID high-water marks in " + file + " could not be read", unavailable);
+        }
+        long accounts = accountMark;
+        long transactions = transactionMark;
+        if (account && id >= accounts) {
+            accounts = id + ACCOUNT_BLOCK_SIZE;
+        } else if (!account && id >= transactions) {
+            transactions = id + TRANSACTION_BLOCK_SIZE;
+        } else {
+            return;
+        }
+        if (file != null) {
+            try {
+                write(accounts, transactions);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error reserving IDs in " + file, e);
+            }
+        }
+        accountMark = accounts;
+        transactionMark = transactions;
+    }
+
+    private void write(long accounts, long transactions) throws IOException {
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BinarySnapshots.Writer out = new BinarySnapshots.Writer(tempFile)) {
+            out.putInt(MAGIC);
+            out.putInt(BinarySnapshots.FORMAT_VERSION);
+            out.putLong(accounts);
+            out.putLong(transactions);
+            out.finish();
+        }
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Like String.format("%0" + digits + "d", value) without parsing a format string on every call
+    private static String zeroPadded(long value, int digits) {
+        char[] chars = new char[digits];
+        for (int i = digits - 1; i >= 0; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,727 @@
+package ledger;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead journal for ledger mutations.
+ *
+ * The file starts with an 8-byte header (magic, format version). Every record is framed as
+ * {@code [int length][body][int crc32]}. The body always has the same
+ * field layout regardless of the record type, so replay never has to branch on the format:
+ * lsn, timestamp, type, account number, counterparty, amount, transaction id, counter transaction id,
+ * account type, name, address, phone number. Unused fields are written as empty strings or zero.
+ * Amounts are in cents (see {@link Money}). INTEREST records keep the month they pay interest for
+ * ({@code yyyy-MM}) in the name field.
+ *
+ * How records reach the disk depends on the {@link Settings}:
+ * <ul>
+ * <li>{@link Settings#durable}: {@link #append} only numbers and encodes the record, on the caller's
+ * thread, and puts the encoded frame on a bounded queue.
+ * A sequencer thread takes whatever has queued up, up to {@code batchSize} records, writes it in one
+ * call and forces it with one fsync, then advances the durable LSN. Callers wait in
+ * {@link #awaitDurable}, so a change is acknowledged only once it is on disk, while the fsync is shared
+ * by every change that arrived during the previous one. A full queue blocks {@link #append}.</li>
+ * <li>{@link Settings#relaxed}: records are written to the operating system on every append, so a
+ * process crash loses nothing, but the fsync runs only once {@code syncEvery} records are pending and
+ * from a background flusher every {@code syncIntervalMillis}.</li>
+ * </ul>
+ * If the sequencer cannot write or force a batch, the journal fails: waiting callers and every later
+ * append get the error, so no further change is accepted until the journal is reopened.
+ * A record that cannot be encoded, in either mode, fails only its own append.
+ */
+public final class LedgerJournal implements Closeable {
+
+    public enum RecordType {
+        OPEN_ACCOUNT,
+        DEPOSIT,
+        WITHDRAWAL,
+        TRANSFER,
+        CLOSE_ACCOUNT,
+        INTEREST // Last, since the ordinal is what is written
+    }
+
+    /**
+     * How appends are made durable.
+     */
+    public static final class Settings {
+        private final boolean pipelined;
+        private final int batchSize;
+        private final long batchDelayNanos;
+        private final int syncEvery;
+        private final long syncIntervalMillis;
+
+        private Settings(boolean pipelined, int batchSize, long batchDelayNanos, int syncEvery, long syncIntervalMillis) {
+            this.pipelined = pipelined;
+            this.batchSize = batchSize;
+            this.batchDelayNanos = batchDelayNanos;
+            this.syncEvery = syncEvery;
+            this.syncIntervalMillis = syncIntervalMillis;
+        }
+
+        /**
+         * Every append is durable before {@link #awaitDurable} returns for it. Up to {@code batchSize}
+         * records share an fsync; after the first record of a batch the sequencer waits up to
+         * {@code batchDelayMicros} for more, or not at all with 0, in which case a batch is whatever
+         * queued up during the previous fsync.
+         */
+        public static Settings durable(int batchSize, long batchDelayMicros) {
+            return new Settings(true, Math.max(1, batchSize), Math.max(0L, batchDelayMicros) * 1000L, 1, 0L);
+        }
+
+        /**
+         * Appends are acknowledged before they are durable: fsync once {@code syncEvery} records are
+         * pending, and every {@code syncIntervalMillis} if that is positive.
+         */
+        public static Settings relaxed(int syncEvery, long syncIntervalMillis) {
+            return new Settings(false, 1, 0L, Math.max(1, syncEvery), syncIntervalMillis);
+        }
+    }
+
+    public static final class Record {
+        private final long lsn;
+        private final long timestamp;
+        private final RecordType type;
+        private final String accountNumber;
+        private final String counterpartyNumber;
+        private final long amount;
+        private final String transactionId;
+        private final String counterTransactionId;
+        private final String accountType;
+        private final String name;
+        private final String address;
+        private final String phoneNumber;
+
+        private Record(long lsn, long timestamp, RecordType type, String accountNumber, String counterpartyNumber, long amount,
+                       String transactionId, String counterTransactionId, String accountType, String name, String address, String phoneNumber) {
+            this.lsn = lsn;
+            this.timestamp = timestamp;
+            this.type = type;
+            this.accountNumber = accountNumber;
+            this.counterpartyNumber = counterpartyNumber;
+            this.amount = amount;
+            this.transactionId = transactionId;
+            this.counterTransactionId = counterTransactionId;
+            this.accountType = accountType;
+            this.name = name;
+            this.address = address;
+            this.phoneNumber = phoneNumber;
+        }
+
+        public static Record openAccount(long timestamp, String accountNumber, String name, String address, String phoneNumber,
+                                         long initialDeposit, String accountType, String transactionId) {
+            return new Record(0, timestamp, RecordType.OPEN_ACCOUNT, accountNumber, "", initialDeposit,
+                    transactionId, "", accountType, name, address, phoneNumber);
+        }
+
+        public static Record deposit(long timestamp, String accountNumber, long amount, String transactionId) {
+            return new Record(0, timestamp, RecordType.DEPOSIT, accountNumber, "", amount,
+                    transactionId, "", "", "", "", "");
+        }
+
+        public static Record withdrawal(long timestamp, String accountNumber, long amount, String transactionId) {
+            return new Record(0, timestamp, RecordType.WITHDRAWAL, accountNumber, "", amount,
+                    transactionId, "", "", "", "", "");
+        }
+
+        public static Record transfer(long timestamp, String sourceAccountNumber, String destinationAccountNumber, long amount,
+                                      String transferOutId, String transferInId) {
+            return new Record(0, timestamp, RecordType.TRANSFER, sourceAccountNumber, destinationAccountNumber, amount,
+                    transferOutId, transferInId, "", "", "", "");
+        }
+
+        public static Record closeAccount(long timestamp, String accountNumber) {
+            return new Record(0, timestamp, RecordType.CLOSE_ACCOUNT, accountNumber, "", 0L,
+                    "", "", "", "", "", "");
+        }
+
+        public static Record interest(long timestamp, String accountNumber, long amount, String transactionId, String period) {
+            return new Record(0, timestamp, RecordType.INTEREST, accountNumber, "", amount,
+                    transactionId, "", "", period, "", "");
+        }
+
+        private Record withLsn(long lsn) {
+            return new Record(lsn, timestamp, type, accountNumber, counterpartyNumber, amount,
+                    transactionId, counterTransactionId, accountType, name, address, phoneNumber);
+        }
+
+        public long getLsn() {
+            return lsn;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public RecordType getType() {
+            return type;
+        }
+
+        public String getAccountNumber() {
+            return accountNumber;
+        }
+
+        public String getCounterpartyNumber() {
+            return counterpartyNumber;
+        }
+
+        public long getAmount() {
+            return amount;
+        }
+
+        public String getTransactionId() {
+            return transactionId;
+        }
+
+        public String getCounterTransactionId() {
+            return counterTransactionId;
+        }
+
+        public String getAccountType() {
+            return accountType;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getAddress() {
+            return address;
+        }
+
+        public String getPhoneNumber() {
+            return phoneNumber;
+        }
+    }
+
+    private static final int MAGIC = 0x4C4A4E4C; // "LJNL"
+    private static final int FORMAT_VERSION = 2;
+    private static final int HEADER_LENGTH = Integer.BYTES + Integer.BYTES;
+    private static final int MAX_RECORD_LENGTH = 1 << 20;
+
+    private static final int QUEUE_BATCHES = 4; // Queue capacity, in batches
+
+    private final Path path;
+    private final Settings settings;
+    // Writes to the channel; held by the sequencer while it writes a batch and by checkpoints
+    private final ReentrantLock ioLock = new ReentrantLock();
+    private FileChannel channel; // Replaced when a checkpoint keeps the records appended after it
+    private final ScheduledExecutorService flusher;
+    private final ByteArrayOutputStream bodyBuffer = new ByteArrayOutputStream(256);
+    private final CRC32 crc = new CRC32();
+    private long nextLsn; // Guarded by this
+    private long writtenLsn; // Last LSN handed to the operating system; guarded by ioLock
+    private int pendingSync;
+    private boolean closed;
+
+    // Durable mode only
+    private final BlockingQueue<Frame> queue;
+    private final Thread sequencer;
+    private final Object durability = new Object(); // Guards the two fields below; waited on by awaitDurable
+    private long durableLsn;
+    private IOException failure;
+
+    // A record encoded by the thread that appended it, so a record that cannot be encoded fails only its
+    // own append and never reaches the sequencer
+    private static final class Frame {
+        private final long lsn;
+        private final ByteBuffer bytes;
+
+        private Frame(long lsn, ByteBuffer bytes) {
+            this.lsn = lsn;
+            this.bytes = bytes;
+        }
+    }
+
+    private LedgerJournal(Path path, FileChannel channel, long nextLsn, Settings settings) {
+        this.path = path;
+        this.channel = channel;
+        this.nextLsn = nextLsn;
+        this.settings = settings;
+        writtenLsn = nextLsn - 1;
+        durableLsn = nextLsn - 1;
+        if (settings.pipelined) {
+            queue = new ArrayBlockingQueue<>(settings.batchSize * QUEUE_BATCHES);
+            sequencer = new Thread(this::sequence, "journal-sequencer");
+            sequencer.setDaemon(true);
+            sequencer.start();
+        } else {
+            queue = null;
+            sequencer = null;
+        }
+        if (!settings.pipelined && settings.syncEvery > 1 && settings.syncIntervalMillis > 0) {
+            flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "journal-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::syncQuietly, settings.syncIntervalMillis, settings.syncIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            flusher = null;
+        }
+    }
+
+    /**
+     * Replays every intact record of the journal at {@code path} into {@code consumer}, truncates a torn
+     * tail left by a crash and opens the journal for appending. LSNs continue after both the last record
+     * in the file and {@code checkpointLsn}.
+     */
+    public static LedgerJournal open(Path path, long checkpointLsn, Settings settings, Consumer<Record> consumer) throws IOException {
+        long lastLsn = checkpointLsn;
+        long validLength = 0;
+        if (Files.exists(path) && Files.size(path) >= HEADER_LENGTH) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+                readHeader(in);
+                validLength = HEADER_LENGTH;
+                byte[] body;
+                while ((body = readFrame(in)) != null) {
+                    Record record = decodeBody(body);
+                    if (record == null) {
+                        break;
+                    }
+                    consumer.accept(record);
+                    lastLsn = Math.max(lastLsn, record.getLsn());
+                    validLength += Integer.BYTES + body.length + Integer.BYTES;
+                }
+            }
+        }
+
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (channel.size() < HEADER_LENGTH) {
+            writeHeader(channel);
+            validLength = HEADER_LENGTH;
+        } else if (channel.size() > validLength) {
+            channel.truncate(validLength);
+            channel.force(true);
+        }
+        channel.position(validLength);
+        return new LedgerJournal(path, channel, lastLsn + 1, settings);
+    }
+
+    /**
+     * Passes every intact record of the journal at {@code path} to {@code consumer}, stopping at a torn
+     * tail, and returns how many there were. Unlike {@link #open} it never changes the file, so it can
+     * read a copy taken from a running application.
+     */
+    public static long read(Path path, Consumer<Record> consumer) throws IOException {
+        long count = 0;
+        if (Files.size(path) < HEADER_LENGTH) {
+            return count;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            readHeader(in);
+            byte[] body;
+            while ((body = readFrame(in)) != null) {
+                Record record = decodeBody(body);
+                if (record == null) {
+                    break;
+                }
+                consumer.accept(record);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Appends a record and returns its LSN. In durable mode the record is only queued; pass the LSN to
+     * {@link #awaitDurable} to wait until it is on disk. In relaxed mode it is handed to the operating
+     * system before this returns.
+     */
+    public synchronized long append(Record record) throws IOException {
+        ByteBuffer frame = encodeFrame(record.withLsn(nextLsn), bodyBuffer, crc);
+        if (queue != null) {
+            enqueue(new Frame(nextLsn, frame));
+            return nextLsn++;
+        }
+        ioLock.lock();
+        try {
+            writeFully(channel, frame);
+            writtenLsn = nextLsn;
+        } finally {
+            ioLock.unlock();
+        }
+
+        if (++pendingSync >= settings.syncEvery) {
+            sync();
+        }
+        return nextLsn++;
+    }
+
+    /**
+     * Appends records in order and returns the LSN of the last one. In relaxed mode they count as one
+     * record towards {@code syncEvery}, so a batch costs at most one fsync however many records it holds;
+     * in durable mode they are queued together, so they share the fsync of the batch they fall in.
+     */
+    public synchronized long appendAll(List<Record> records) throws IOException {
+        // All encoded before any is written, so a record that cannot be encoded fails the batch as a whole
+        ByteBuffer[] frames = new ByteBuffer[records.size()];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = encodeFrame(records.get(i).withLsn(nextLsn + i), bodyBuffer, crc);
+        }
+        if (queue != null) {
+            for (ByteBuffer frame : frames) {
+                enqueue(new Frame(nextLsn++, frame));
+            }
+            return nextLsn - 1;
+        }
+        ioLock.lock();
+        try {
+            for (ByteBuffer frame : frames) {
+                writeFully(channel, frame);
+                writtenLsn = nextLsn++;
+            }
+        } finally {
+            ioLock.unlock();
+        }
+        if (!records.isEmpty() && ++pendingSync >= settings.syncEvery) {
+            sync();
+        }
+        return nextLsn - 1;
+    }
+
+    /**
+     * In durable mode, waits until every record up to and including {@code lsn} is on disk. Waiting is
+     * not interruptible, since the caller has usually applied the change already and needs to know
+     * whether it was saved; an interrupt is kept for the caller to see afterwards. In relaxed mode
+     * returns at once.
+     *
+     * @throws IOException if the journal failed before the record was forced to disk
+     */
+    public void awaitDurable(long lsn) throws IOException {
+        if (queue == null) {
+            return;
+        }
+        boolean interrupted = false;
+        synchronized (durability) {
+            while (durableLsn < lsn && failure == null) {
+                try {
+                    durability.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (durableLsn < lsn) {
+                throw new IOException(failure.getMessage(), failure);
+            }
+        }
+    }
+
+    /**
+     * Forces any pending records to stable storage.
+     */
+    public void sync() throws IOException {
+        if (queue != null) {
+            awaitDurable(lastLsn());
+            return;
+        }
+        synchronized (this) {
+            if (pendingSync > 0) {
+                ioLock.lock();
+                try {
+                    channel.force(false);
+                } finally {
+                    ioLock.unlock();
+                }
+                pendingSync = 0;
+            }
+        }
+    }
+
+    /**
+     * Called after a snapshot covering every record up to and including {@code lsn} has been written.
+     * Those records are no longer needed. If nothing was appended after them the journal starts over
+     * empty; otherwise the later records are copied into a fresh journal that replaces this one. In
+     * durable mode, records after {@code lsn} that are still queued are written to the new journal.
+     */
+    public synchronized void checkpoint(long lsn) throws IOException {
+        awaitDurable(lsn); // Otherwise a queued record the snapshot contains could be written after the cut
+        ioLock.lock();
+        try {
+            if (lsn >= writtenLsn) {
+                channel.truncate(HEADER_LENGTH);
+                channel.position(HEADER_LENGTH);
+                channel.force(true);
+                pendingSync = 0;
+                return;
+            }
+
+            long keepFrom = positionAfter(lsn);
+            Path tempFile = path.resolveSibling(path.getFileName() + ".tmp");
+            try (FileChannel source = FileChannel.open(path, StandardOpenOption.READ);
+                 FileChannel target = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                         StandardOpenOption.TRUNCATE_EXISTING)) {
+                writeHeader(target);
+                long end = source.size();
+                for (long position = keepFrom; position < end; ) {
+                    position += source.transferTo(position, end - position, target);
+                }
+                target.force(true);
+            }
+            channel.close();
+            Files.move(tempFile, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel = FileChannel.open(path, StandardOpenOption.WRITE);
+            channel.position(channel.size());
+            pendingSync = 0; // The copy was forced above
+        } finally {
+            ioLock.unlock();
+        }
+    }
+
+    /**
+     * LSN of the most recently appended record; a snapshot taken now covers everything up to it. In
+     * durable mode the record may still be queued.
+     */
+    public synchronized long lastLsn() {
+        return nextLsn - 1;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Writes out and forces everything appended so far, unless the journal has failed, and closes it.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (flusher != null) {
+            flusher.shutdownNow();
+        }
+        closed = true;
+        try {
+            sync();
+        } finally {
+            if (sequencer != null) {
+                sequencer.interrupt(); // Only waiting for records now, as all of them are written or the journal failed
+                try {
+                    sequencer.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            ioLock.lock();
+            try {
+                channel.close();
+            } finally {
+                ioLock.unlock();
+            }
+        }
+    }
+
+    private void syncQuietly() {
+        try {
+            synchronized (this) {
+                if (channel.isOpen()) {
+                    sync();
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error syncing journal: " + e.getMessage());
+        }
+    }
+
+    // Called with this held, which keeps records in LSN order on the queue
+    private void enqueue(Frame frame) throws IOException {
+        if (closed) {
+            throw new IOException("Journal is closed");
+        }
+        try {
+            // Waits while the queue is full, but gives up if the sequencer has failed and will never empty it
+            while (!queue.offer(frame, 10, TimeUnit.MILLISECONDS)) {
+                checkFailure();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for room in the journal queue");
+        }
+        checkFailure();
+    }
+
+    private void checkFailure() throws IOException {
+        synchronized (durability) {
+            if (failure != null) {
+                throw new IOException("Journal failed earlier: " + failure.getMessage(), failure);
+            }
+        }
+    }
+
+    // The sequencer thread: write and force whatever has queued up, one batch at a time, until interrupted.
+    private void sequence() {
+        List<Frame> batch = new ArrayList<>(settings.batchSize);
+        try {
+            while (true) {
+                batch.add(queue.take());
+                if (settings.batchDelayNanos > 0) {
+                    long deadline = System.nanoTime() + settings.batchDelayNanos;
+                    Frame next;
+                    while (batch.size() < settings.batchSize
+                            && (next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) != null) {
+                        batch.add(next);
+                    }
+                } else {
+                    queue.drainTo(batch, settings.batchSize - 1);
+                }
+                long last = batch.get(batch.size() - 1).lsn;
+                try {
+                    writeBatch(batch);
+                } catch (IOException | RuntimeException e) {
+                    synchronized (durability) {
+                        failure = e instanceof IOException io ? io : new IOException(e);
+                        durability.notifyAll();
+                    }
+                    System.err.println("Error writing journal: " + e.getMessage() + ". No further changes are accepted.");
+                    return;
+                }
+                synchronized (durability) {
+                    durableLsn = last;
+                    durability.notifyAll();
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            // Closing
+        }
+    }
+
+    private void writeBatch(List<Frame> batch) throws IOException {
+        ByteBuffer[] frames = new ByteBuffer[batch.size()];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = batch.get(i).bytes;
+        }
+        ioLock.lock();
+        try {
+            long remaining = 0;
+            for (ByteBuffer frame : frames) {
+                remaining += frame.remaining();
+            }
+            while (remaining > 0) {
+                remaining -= channel.write(frames);
+            }
+            writtenLsn = batch.get(batch.size() - 1).lsn;
+            channel.force(false);
+        } finally {
+            ioLock.unlock();
+        }
+    }
+
+    // File position of the first frame with an LSN above lsn, or the end of the journal if there is none.
+    private long positionAfter(long lsn) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            readHeader(in);
+            long position = HEADER_LENGTH;
+            byte[] body;
+            while ((body = readFrame(in)) != null && ByteBuffer.wrap(body).getLong() <= lsn) {
+                position += Integer.BYTES + body.length + Integer.BYTES;
+            }
+            return position;
+        }
+    }
+
+    private static void writeHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        header.putInt(MAGIC).putInt(FORMAT_VERSION).flip();
+        channel.position(0);
+        writeFully(channel, header);
+        channel.force(true);
+    }
+
+    private static void readHeader(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a journal file");
+        }
+        int version = in.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported journal format version " + version);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static ByteBuffer encodeFrame(Record record, ByteArrayOutputStream bodyBuffer, CRC32 crc) throws IOException {
+        byte[] body = encodeBody(record, bodyBuffer);
+        crc.reset();
+        crc.update(body);
+        ByteBuffer frame = ByteBuffer.allocate(Integer.BYTES + body.length + Integer.BYTES);
+        frame.putInt(body.length).put(body).putInt((int) crc.getValue()).flip();
+        return frame;
+    }
+
+    private static byte[] encodeBody(Record record, ByteArrayOutputStream bodyBuffer) throws IOException {
+        bodyBuffer.reset();
+        DataOutputStream out = new DataOutputStream(bodyBuffer);
+        out.writeLong(record.getLsn());
+        out.writeLong(record.getTimestamp());
+        out.writeByte(record.getType().ordinal());
+        out.writeUTF(record.getAccountNumber());
+        out.writeUTF(record.getCounterpartyNumber());
+        out.writeLong(record.getAmount());
+        out.writeUTF(record.getTransactionId());
+        out.writeUTF(record.getCounterTransactionId());
+        out.writeUTF(record.getAccountType());
+        out.writeUTF(record.getName());
+        out.writeUTF(record.getAddress());
+        out.writeUTF(record.getPhoneNumber());
+        out.flush();
+        return bodyBuffer.toByteArray();
+    }
+
+    // Returns null at the end of the file or at the first torn/corrupt frame.
+    private static byte[] readFrame(DataInputStream in) throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (length <= 0 || length > MAX_RECORD_LENGTH) {
+            return null;
+        }
+
+        byte[] body = new byte[length];
+        int checksum;
+        try {
+            in.readFully(body);
+            checksum = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        return (int) crc.getValue() == checksum ? body : null;
+    }
+
+    private static Record decodeBody(byte[] body) throws IOException {
+        DataInputStream fields = new DataInputStream(new ByteArrayInputStream(body));
+        long lsn = fields.readLong();
+        long timestamp = fields.readLong();
+        int typeOrdinal = fields.readByte();
+        if (typeOrdinal < 0 || typeOrdinal >= RecordType.values().length) {
+            return null;
+        }
+        return new Record(lsn, timestamp, RecordType.values()[typeOrdinal],
+                fields.readUTF(), fields.readUTF(),
+                fields.readLong(), fields.readUTF(), fields.readUTF(),
+                fields.readUTF(), fields.readUTF(), fields.readUTF(), fields.readUTF());
+    }
+}
@@ -0,0 +1,119 @@
+package ledger;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Latency histograms and outcome counts for every {@link LedgerEngine} operation, kept per operation and
+ * per {@link LedgerResult.Status}, so rejections such as insufficient funds show up with their own count
+ * and latency. Histograms are created on first use; recording is lock-free and costs two clock reads plus
+ * a few atomic adds.
+ *
+ * A failed {@link Operation#CHECKPOINT} is recorded as {@link LedgerResult.Status#JOURNAL_FAILURE}, the
+ * status for the ledger's I/O errors. {@link Operation#POST_INTEREST} is recorded once per batch of
+ * postings, as {@link LedgerResult.Status#JOURNAL_FAILURE} if the batch could not be journaled.
+ */
+public final class LedgerMetrics {
+
+    public enum Operation {
+        CREATE_ACCOUNT,
+        DEPOSIT,
+        WITHDRAW,
+        TRANSFER,
+        CLOSE_ACCOUNT,
+        HISTORY_PAGE,
+        CHECKPOINT,
+        POST_INTEREST,
+        SEARCH,
+        BALANCE
+    }
+
+    private static final Operation[] OPERATIONS = Operation.values();
+    private static final LedgerResult.Status[] STATUSES = LedgerResult.Status.values();
+
+    // [operation][status], null until that outcome first happens
+    private final AtomicReferenceArray<LatencyHistogram> histograms = new AtomicReferenceArray<>(OPERATIONS.length * STATUSES.length);
+
+    /**
+     * Records an operation that started at {@code startNanos}, a {@link System#nanoTime()} reading, and
+     * returns its result so callers can record and return in one step.
+     */
+    public LedgerResult record(Operation operation, long startNanos, LedgerResult result) {
+        record(operation, result.getStatus(), System.nanoTime() - startNanos);
+        return result;
+    }
+
+    public void record(Operation operation, LedgerResult.Status status, long nanos) {
+        histogram(operation, status).record(nanos);
+    }
+
+    private LatencyHistogram histogram(Operation operation, LedgerResult.Status status) {
+        int slot = operation.ordinal() * STATUSES.length + status.ordinal();
+        LatencyHistogram histogram = histograms.get(slot);
+        if (histogram == null) {
+            histograms.compareAndSet(slot, null, new LatencyHistogram());
+            histogram = histograms.get(slot);
+        }
+        return histogram;
+    }
+
+    /**
+     * Latencies of one outcome of an operation so far.
+     */
+    public LatencyHistogram.Snapshot snapshot(Operation operation, LedgerResult.Status status) {
+        LatencyHistogram histogram = histograms.get(operation.ordinal() * STATUSES.length + status.ordinal());
+        return histogram == null ? LatencyHistogram.Snapshot.EMPTY : histogram.snapshot();
+    }
+
+    /**
+     * Latencies of every outcome of an operation so far.
+     */
+    public LatencyHistogram.Snapshot snapshot(Operation operation) {
+        LatencyHistogram.Snapshot merged = LatencyHistogram.Snapshot.EMPTY;
+        for (LedgerResult.Status status : STATUSES) {
+            LatencyHistogram histogram = histograms.get(operation.ordinal() * STATUSES.length + status.ordinal());
+            if (histogram != null) {
+                merged = merged.merge(histogram.snapshot());
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * A table of every operation that has run, with a row per outcome below it. Times are in microseconds.
+     */
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.ROOT, "%-24s %10s %10s %10s %10s %10s %10s%n",
+                "Operation", "Count", "Mean us", "p50 us", "p99 us", "p99.9 us", "Max us"));
+        boolean any = false;
+        for (Operation operation : OPERATIONS) {
+            LatencyHistogram.Snapshot total = snapshot(operation);
+            if (total.getCount() == 0) {
+                continue;
+            }
+            any = true;
+            appendRow(report, operation.name().toLowerCase(Locale.ROOT), total);
+            if (snapshot(operation, LedgerResult.Status.SUCCESS).getCount() == total.getCount()) {
+                continue; // Nothing rejected, so the outcome rows would repeat the total
+            }
+            for (LedgerResult.Status status : STATUSES) {
+                LatencyHistogram.Snapshot outcome = snapshot(operation, status);
+                if (outcome.getCount() > 0) {
+                    appendRow(report, "  " + status, outcome);
+                }
+            }
+        }
+        if (!any) {
+            report.append("No operations recorded yet.").append(System.lineSeparator());
+        }
+        return report.toString();
+    }
+
+    private static void appendRow(StringBuilder report, String label, LatencyHistogram.Snapshot snapshot) {
+        report.append(String.format(Locale.ROOT, "%-24s %10d %10.1f %10.1f %10.1f %10.1f %10.1f%n", label, snapshot.getCount(),
+                snapshot.getMeanNanos() / 1e3, snapshot.getValueAtPercentile(50) / 1e3, snapshot.getValueAtPercentile(99) / 1e3,
+                snapshot.getValueAtPercentile(99.9) / 1e3, snapshot.getMaxNanos() / 1e3));
+    }
+}
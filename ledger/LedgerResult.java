@@ -0,0 +1,75 @@
+package ledger;
+
+/**
+ * Outcome of a {@link LedgerEngine} operation. Rejections carry the user-facing message; successes carry
+ * the balances after the operation so callers can report them without a second, racy lookup.
+ */
+public final class LedgerResult {
+
+    public enum Status {
+        SUCCESS,
+        INVALID_AMOUNT,
+        ACCOUNT_NOT_FOUND,
+        BELOW_MINIMUM_DEPOSIT,
+        INSUFFICIENT_FUNDS,
+        SAVINGS_LIMIT_REACHED,
+        BALANCE_OVERFLOW,
+        BALANCE_NOT_ZERO,
+        JOURNAL_FAILURE,
+        ALREADY_POSTED,
+        VELOCITY_LIMIT_REACHED,
+        FIELD_TOO_LONG
+    }
+
+    private final Status status;
+    private final String message;
+    private final String accountNumber;
+    private final long balance;
+    private final long counterpartyBalance;
+
+    private LedgerResult(Status status, String message, String accountNumber, long balance, long counterpartyBalance) {
+        this.status = status;
+        this.message = message;
+        this.accountNumber = accountNumber;
+        this.balance = balance;
+        this.counterpartyBalance = counterpartyBalance;
+    }
+
+    static LedgerResult success(String accountNumber, long balance) {
+        return new LedgerResult(Status.SUCCESS, null, accountNumber, balance, 0L);
+    }
+
+    static LedgerResult success(String accountNumber, long balance, long counterpartyBalance) {
+        return new LedgerResult(Status.SUCCESS, null, accountNumber, balance, counterpartyBalance);
+    }
+
+    static LedgerResult rejected(Status status, String message) {
+        return new LedgerResult(status, message, null, 0L, 0L);
+    }
+
+    public boolean isSuccess() {
+        return status == Status.SUCCESS;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public String getAccountNumber() {
+        return accountNumber;
+    }
+
+    // In cents; the account's balance after the operation (the source account for transfers)
+    public long getBalance() {
+        return balance;
+    }
+
+    // In cents; the destination account's balance after a transfer
+    public long getCounterpartyBalance() {
+        return counterpartyBalance;
+    }
+}
@@ -0,0 +1,452 @@
+package ledger;
+
+import java.io.*;
+import java.nio.file.*;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+
+/**
+ * Persistence for a {@link LedgerEngine}: the {@code accounts.dat} snapshot, the transaction history in
+ * a {@link MappedTransactionStore}, and the write-ahead journal replayed on top of both.
+ *
+ * The accounts snapshot is written in the {@link BinarySnapshots} format. A Java serialization snapshot
+ * left by an earlier version is still read, and is rewritten in the binary format as soon as it is
+ * loaded. The Java serialization {@code transactions.dat} snapshot of an earlier version is moved into
+ * the transaction store the first time the store is opened, and then deleted.
+ *
+ * A checkpoint writes the accounts as of one point in the order of changes, forces the transactions
+ * appended up to that point and then drops the journal records both now contain. It runs on exit and,
+ * once {@link #startBackgroundCheckpoints} has been called, periodically on a background thread while
+ * mutations continue.
+ *
+ * {@link #compact} moves old transactions, and those of closed accounts, out of the store into a
+ * {@link TransactionArchive} in its {@code archive} subdirectory, so the live history stops growing
+ * with time.
+ */
+public final class LedgerStore {
+
+    // Keeps this month's SAVINGS withdrawals and all of last month, which the month-end job reads, live
+    public static final int MIN_RETENTION_DAYS = 62;
+    private static final String ARCHIVE_DIRECTORY = "archive";
+
+    private final LedgerEngine engine;
+    private final String accountsFile;
+    private final String transactionsFile;
+    private final String transactionsDirectory;
+    private final String journalFile;
+    private final String idsFile;
+    private final LedgerJournal.Settings journalSettings;
+    private LedgerJournal journal;
+    private MappedTransactionStore transactionStore;
+    private TransactionArchive archive;
+    private LedgerIds ids;
+    // LSN of the last journal record already contained in the accounts snapshot and the transaction store.
+    private long accountsSnapshotLsn;
+    private long transactionsSnapshotLsn;
+    private boolean legacySnapshotLoaded;
+    private final CheckpointMetrics checkpointMetrics = new CheckpointMetrics();
+    private ScheduledExecutorService checkpointer;
+
+    /**
+     * @param transactionsFile      snapshot of an earlier version, only read to migrate it into the store
+     * @param transactionsDirectory directory of the transaction store's segment files
+     * @param idsFile               high-water marks of the account number and transaction ID sequences
+     * @param journalSettings       how journal appends are made durable
+     */
+    public LedgerStore(LedgerEngine engine, String accountsFile, String transactionsFile, String transactionsDirectory,
+                       String journalFile, String idsFile, LedgerJournal.Settings journalSettings) {
+        this.engine = engine;
+        this.accountsFile = accountsFile;
+        this.transactionsFile = transactionsFile;
+        this.transactionsDirectory = transactionsDirectory;
+        this.journalFile = journalFile;
+        this.idsFile = idsFile;
+        this.journalSettings = journalSettings;
+    }
+
+    /**
+     * Restores the engine from the snapshots and the journal. A missing accounts snapshot or transaction
+     * store starts the ledger empty, but one that exists and cannot be read fails the load: running
+     * without it would let the next checkpoint overwrite it and drop the journal that rebuilds it. So
+     * does a journal that cannot be opened, since changes could not be journaled before they are applied.
+     *
+     * @throws IOException if a snapshot or the transaction store exists but cannot be read, or the journal cannot be opened
+     */
+    public void load() throws IOException {
+        openIds();
+        Map<String, Account> loadedAccounts = loadAccounts();
+        transactionStore = openTransactionStore();
+        engine.restore(loadedAccounts, transactionStore);
+        openJournal(); // Replay everything recorded after the snapshots were written
+        if (legacySnapshotLoaded) {
+            // One-time migration: rewrite a Java serialization snapshot in the binary format
+            System.out.println("Migrating snapshots to the binary format.");
+            save();
+            legacySnapshotLoaded = false;
+        }
+    }
+
+    public void save() {
+        checkpoint(true);
+    }
+
+    /**
+     * Checkpoints every {@code intervalMillis} on a daemon thread until {@link #close}. Does nothing if the
+     * interval is not positive.
+     */
+    public synchronized void startBackgroundCheckpoints(long intervalMillis) {
+        if (intervalMillis <= 0 || checkpointer != null) {
+            return;
+        }
+        checkpointer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ledger-checkpointer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        checkpointer.scheduleWithFixedDelay(() -> checkpoint(false), intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public CheckpointMetrics getCheckpointMetrics() {
+        return checkpointMetrics;
+    }
+
+    /**
+     * Moves every transaction from before the start of the month {@code retentionDays} ago, and every
+     * transaction of a closed account, to the archive. An open account that had transactions archived
+     * starts its live history with a {@link TransactionType#CARRIED_FORWARD} entry for the balance they
+     * add up to. Operations wait while the history is rewritten, so run it when the ledger is quiet.
+     *
+     * The rewritten history replaces the old one in a single step, so a crash at any point leaves one or
+     * the other; running it again finishes the job.
+     *
+     * @return false if it failed, in which case the live history is unchanged
+     * @throws IllegalArgumentException if {@code retentionDays} is below {@link #MIN_RETENTION_DAYS}
+     */
+    public synchronized boolean compact(int retentionDays) {
+        if (retentionDays < MIN_RETENTION_DAYS) {
+            throw new IllegalArgumentException("Transactions must be kept for at least " + MIN_RETENTION_DAYS + " days.");
+        }
+        if (transactionStore == null || archive == null) {
+            System.err.println("Error compacting transactions: the transaction store is not open.");
+            return false;
+        }
+        ZoneId zone = ZoneId.systemDefault();
+        long cutoff = YearMonth.from(Instant.now().minus(Duration.ofDays(retentionDays)).atZone(zone))
+                .atDay(1).atStartOfDay(zone).toInstant().toEpochMilli();
+        long start = System.nanoTime();
+        long before = transactionStore.size();
+        long[] archived = new long[3]; // transactions, segments, closed accounts
+        try {
+            engine.replaceTransactionStore(current -> {
+                try {
+                    return rewriteTransactions(cutoff, archived);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            System.err.println("Error compacting transactions: " + e.getCause().getMessage());
+            return false;
+        }
+        System.out.printf(Locale.ROOT, "Archived %d transactions from before %s, including %d closed accounts, into %d segments.%n",
+                archived[0], Instant.ofEpochMilli(cutoff).atZone(zone).toLocalDate(), archived[2], archived[1]);
+        System.out.printf(Locale.ROOT, "Live history: %d transactions, down from %d (%.1f s).%n",
+                transactionStore.size(), before, (System.nanoTime() - start) / 1e9);
+        return true;
+    }
+
+    /**
+     * Months that have archived transactions, oldest first.
+     */
+    public List<YearMonth> archivedMonths() throws IOException {
+        return archive == null ? List.of() : archive.months();
+    }
+
+    /**
+     * The account's archived transactions from {@code month}, oldest first.
+     */
+    public List<Transaction> archivedHistory(String accountNumber, YearMonth month) throws IOException {
+        return archive == null ? List.of() : archive.history(accountNumber, month);
+    }
+
+    // Copies the history to keep into the next store generation and the rest into the archive, then
+    // checkpoints the new generation, which is what makes it replace the old one. Runs while the
+    // engine is paused.
+    private MappedTransactionStore rewriteTransactions(long cutoff, long[] archived) throws IOException {
+        long lsn = journal != null ? journal.lastLsn() : transactionsSnapshotLsn; // Everything appended so far
+        if (journal != null) {
+            journal.awaitDurable(lsn); // The new generation must not hold changes the journal could still lose
+        }
+        MappedTransactionStore next = transactionStore.nextGeneration();
+        try (TransactionArchive.Writer archiveWriter = archive.newWriter(next.getGeneration())) {
+            for (String accountNumber : transactionStore.accountNumbers()) {
+                Account account = engine.findAccount(accountNumber);
+                List<Transaction> history = new ArrayList<>(transactionStore.count(accountNumber));
+                transactionStore.forEachNewestFirst(accountNumber, history::add);
+
+                if (account == null) {
+                    archived[2]++;
+                }
+
+                // Oldest first. Closed accounts keep nothing live. An earlier carried-forward entry only
+                // sums up what is already archived, so it is dropped rather than archived.
+                List<Transaction> kept = new ArrayList<>(history.size());
+                for (int i = history.size() - 1; i >= 0; i--) {
+                    Transaction transaction = history.get(i);
+                    if (account != null && transaction.getTimestamp() >= cutoff) {
+                        kept.add(transaction);
+                    } else if (transaction.getTransactionType() != TransactionType.CARRIED_FORWARD) {
+                        archiveWriter.append(transaction);
+                    }
+                }
+                if (account != null && kept.size() < history.size()) {
+                    long carried = account.getBalance();
+                    for (Transaction transaction : kept) {
+                        carried = Money.subtract(carried, transaction.getSignedAmount());
+                    }
+                    next.append(new Transaction(ids.nextTransactionId(), cutoff - 1, accountNumber, TransactionType.CARRIED_FORWARD,
+                            carried, "Balance carried forward"));
+                }
+                kept.forEach(next::append);
+            }
+            archiveWriter.finish();
+            next.checkpoint(lsn);
+            archived[0] = archiveWriter.getTransactions();
+            archived[1] = archiveWriter.getSegments();
+        } catch (IOException | RuntimeException e) {
+            next.close();
+            next.deleteFiles();
+            throw e;
+        }
+
+        transactionStore.close();
+        try {
+            transactionStore.deleteFiles();
+        } catch (IOException e) {
+            System.err.println("Error deleting replaced transaction files: " + e.getMessage()); // Deleted on the next start instead
+        }
+        transactionStore = next;
+        transactionsSnapshotLsn = lsn;
+        return next;
+    }
+
+    // Background checkpoints are quiet unless something goes wrong, so they do not interrupt the menu.
+    private synchronized void checkpoint(boolean verbose) {
+        long start = System.nanoTime();
+        long[] cutLsn = new long[1];
+        Map<String, Account> snapshot = engine.snapshotAccounts(lsn -> {
+            cutLsn[0] = journal != null ? lsn : Math.max(accountsSnapshotLsn, transactionsSnapshotLsn);
+            if (transactionStore != null) {
+                transactionStore.mark(); // Same point as the accounts
+            }
+        });
+        long checkpointLsn = cutLsn[0];
+        if (journal != null) {
+            try {
+                journal.awaitDurable(checkpointLsn); // Never snapshot a change the journal could still lose
+            } catch (IOException e) {
+                System.err.println("Checkpoint skipped: " + e.getMessage());
+                engine.getMetrics().record(LedgerMetrics.Operation.CHECKPOINT, LedgerResult.Status.JOURNAL_FAILURE, System.nanoTime() - start);
+                checkpointMetrics.record(System.nanoTime() - start, 0L, false);
+                return;
+            }
+        }
+
+        long accountsBytes = saveAccounts(snapshot, checkpointLsn, verbose);
+        long transactionsBytes = saveTransactions(checkpointLsn, verbose);
+        boolean succeeded = accountsBytes >= 0 && transactionsBytes >= 0;
+        if (journal != null && succeeded) {
+            try {
+                journal.checkpoint(checkpointLsn); // Both now cover the journal up to the cut
+            } catch (IOException e) {
+                System.err.println("Error truncating journal: " + e.getMessage());
+                succeeded = false;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        checkpointMetrics.record(elapsed, Math.max(0L, accountsBytes) + Math.max(0L, transactionsBytes), succeeded);
+        engine.getMetrics().record(LedgerMetrics.Operation.CHECKPOINT, succeeded ? LedgerResult.Status.SUCCESS : LedgerResult.Status.JOURNAL_FAILURE, elapsed);
+    }
+
+    public void close() {
+        synchronized (this) {
+            if (checkpointer != null) {
+                checkpointer.shutdown();
+            }
+        }
+        if (checkpointer != null) {
+            try {
+                checkpointer.awaitTermination(1, TimeUnit.MINUTES); // Let a running checkpoint finish
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (journal != null) {
+            engine.setJournal(null);
+            try {
+                journal.close();
+            } catch (IOException e) {
+                System.err.println("Error closing journal: " + e.getMessage());
+            }
+        }
+        if (transactionStore != null) {
+            transactionStore.close();
+        }
+    }
+
+    private void openIds() {
+        Path file = Path.of(idsFile);
+        try {
+            ids = LedgerIds.open(file);
+        } catch (IOException e) {
+            System.err.println("Error reading " + idsFile + ": " + e.getMessage()
+                    + ". New accounts and transactions are refused until it is restored.");
+            ids = LedgerIds.unavailable(file, e);
+        }
+        engine.setIds(ids);
+    }
+
+    private void openJournal() throws IOException {
+        try {
+            long checkpointLsn = Math.max(accountsSnapshotLsn, transactionsSnapshotLsn);
+            int[] replayed = {0};
+            journal = LedgerJournal.open(Path.of(journalFile), checkpointLsn, journalSettings, record -> {
+                // Each snapshot file only skips records it already contains
+                engine.applyJournalRecord(record, record.getLsn() > accountsSnapshotLsn, record.getLsn() > transactionsSnapshotLsn);
+                replayed[0]++;
+            });
+            engine.setJournal(journal);
+            if (replayed[0] > 0) {
+                System.out.println("Replayed " + replayed[0] + " journal records from " + journalFile);
+            }
+        } catch (IOException e) {
+            throw new IOException("Error opening journal " + journalFile + ": " + e.getMessage(), e);
+        }
+    }
+
+    private Map<String, Account> loadAccounts() throws IOException {
+        Path file = Path.of(accountsFile);
+        try {
+            Map<String, Account> loadedAccounts;
+            if (BinarySnapshots.isBinary(file)) {
+                BinarySnapshots.Loaded<Map<String, Account>> loaded = BinarySnapshots.readAccounts(file);
+                loadedAccounts = loaded.getContents();
+                accountsSnapshotLsn = loaded.getCheckpointLsn();
+            } else {
+                loadedAccounts = readLegacySnapshot(file, lsn -> accountsSnapshotLsn = lsn);
+                legacySnapshotLoaded = true;
+            }
+            System.out.println("Accounts loaded from " + accountsFile);
+            return loadedAccounts;
+        } catch (NoSuchFileException e) {
+            System.out.println("Accounts file not found. Starting with an empty account list.");
+            return Collections.emptyMap();
+        } catch (IOException | ClassNotFoundException e) {
+            throw new IOException("Error loading accounts from " + accountsFile + ": " + e.getMessage(), e);
+        }
+    }
+
+    // Returns the bytes written, or -1 if the snapshot could not be saved.
+    private long saveAccounts(Map<String, Account> snapshot, long checkpointLsn, boolean verbose) {
+        Path tempFile = Path.of(accountsFile + ".tmp");
+        long bytes;
+        try {
+            BinarySnapshots.writeAccounts(tempFile, snapshot.values(), checkpointLsn);
+            bytes = Files.size(tempFile);
+        } catch (IOException e) {
+            System.err.println("Error saving accounts: " + e.getMessage());
+            return -1L;
+        }
+        if (!replaceSnapshot(tempFile, Path.of(accountsFile))) {
+            return -1L;
+        }
+        accountsSnapshotLsn = checkpointLsn;
+        if (verbose) {
+            System.out.println("Accounts saved to " + accountsFile);
+        }
+        return bytes;
+    }
+
+    private MappedTransactionStore openTransactionStore() throws IOException {
+        try {
+            MappedTransactionStore opened = MappedTransactionStore.open(Path.of(transactionsDirectory));
+            transactionsSnapshotLsn = opened.getCheckpointLsn();
+            if (opened.size() == 0 && Files.exists(Path.of(transactionsFile))) {
+                migrateTransactions(opened);
+            }
+            archive = TransactionArchive.open(Path.of(transactionsDirectory, ARCHIVE_DIRECTORY), opened.getGeneration(), ZoneId.systemDefault());
+            System.out.println("Transactions loaded from " + transactionsDirectory);
+            return opened;
+        } catch (IOException | UncheckedIOException e) {
+            throw new IOException("Error loading transactions from " + transactionsDirectory + ": " + e.getMessage(), e);
+        }
+    }
+
+    // One-time migration: copy a transactions.dat snapshot into the store, then remove it
+    private void migrateTransactions(MappedTransactionStore target) throws IOException {
+        Path file = Path.of(transactionsFile);
+        List<Transaction> migrated;
+        try {
+            migrated = readLegacySnapshot(file, lsn -> transactionsSnapshotLsn = lsn);
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Error migrating " + transactionsFile + ": " + e.getMessage(), e);
+        }
+
+        migrated.forEach(target::append);
+        target.checkpoint(transactionsSnapshotLsn);
+        Files.delete(file);
+        System.out.println("Migrated " + migrated.size() + " transactions from " + transactionsFile + " to " + transactionsDirectory);
+    }
+
+    // Returns the bytes written, or -1 if the store could not be checkpointed.
+    private long saveTransactions(long checkpointLsn, boolean verbose) {
+        if (transactionStore == null) {
+            return -1L;
+        }
+        long bytes;
+        try {
+            bytes = transactionStore.checkpoint(checkpointLsn);
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Error saving transactions: " + e.getMessage());
+            return -1L;
+        }
+        transactionsSnapshotLsn = checkpointLsn;
+        if (verbose) {
+            System.out.println("Transactions saved to " + transactionsDirectory);
+        }
+        return bytes;
+    }
+
+    // Java serialization snapshots from earlier versions; those written before the journal existed end
+    // right after the collection, without a checkpoint LSN.
+    @SuppressWarnings("unchecked")
+    private static <T> T readLegacySnapshot(Path file, LongConsumer checkpointLsn) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream ois = new SnapshotInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            T contents = (T) ois.readObject();
+            try {
+                checkpointLsn.accept(ois.readLong());
+            } catch (EOFException e) {
+                checkpointLsn.accept(0L);
+            }
+            return contents;
+        }
+    }
+
+    // Swap the snapshot in atomically so a crash mid-write never leaves a half-written file behind.
+    private static boolean replaceSnapshot(Path tempFile, Path target) {
+        try {
+            Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error replacing " + target + ": " + e.getMessage());
+            return false;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package ledger;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Accounts as {@link Account} objects in a {@link ConcurrentHashMap} keyed by account number. The
+ * default store; {@link #get} hands out the stored accounts themselves.
+ */
+public final class MapAccountStore implements AccountStore {
+
+    private final Map<String, Account> accounts = new ConcurrentHashMap<>(); // Account Number -> Account
+
+    @Override
+    public Account get(String accountNumber) {
+        return accounts.get(accountNumber);
+    }
+
+    @Override
+    public boolean contains(String accountNumber) {
+        return accounts.containsKey(accountNumber);
+    }
+
+    @Override
+    public long getBalance(String accountNumber) {
+        Account account = accounts.get(accountNumber);
+        return account == null ? NO_ACCOUNT : account.getBalance();
+    }
+
+    @Override
+    public AccountType getAccountType(String accountNumber) {
+        Account account = accounts.get(accountNumber);
+        return account == null ? null : account.getAccountType();
+    }
+
+    @Override
+    public void setBalance(String accountNumber, long balance) {
+        Account account = accounts.get(accountNumber);
+        if (account != null) {
+            account.setBalance(balance);
+        }
+    }
+
+    @Override
+    public boolean add(Account account) {
+        return accounts.putIfAbsent(account.getAccountNumber(), account) == null;
+    }
+
+    @Override
+    public Account put(Account account) {
+        return accounts.put(account.getAccountNumber(), account);
+    }
+
+    @Override
+    public Account remove(String accountNumber) {
+        return accounts.remove(accountNumber);
+    }
+
+    @Override
+    public int size() {
+        return accounts.size();
+    }
+
+    @Override
+    public void forEach(Consumer<Account> action) {
+        accounts.values().forEach(action);
+    }
+
+    @Override
+    public void clear() {
+        accounts.clear();
+    }
+}
@@ -0,0 +1,441 @@
+package ledger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Transaction history kept in memory-mapped, append-only segment files, so the heap holds only a small
+ * entry per account however many transactions there are.
+ *
+ * Records are appended to {@code segment-NNNNNN.seg} files of {@link #SEGMENT_SIZE} bytes each; a record
+ * never spans two segments. Every record holds the position of the previous record of the same account,
+ * and the store keeps only the newest position and a count per account, so an account's history is read
+ * newest first by following the chain and a page of N costs N record reads.
+ * <pre>
+ * [int length][long previous position][long timestamp][long amount][byte type]
+ * [short+bytes accountNumber][short+bytes transactionId][short+bytes description]
+ * </pre>
+ * {@link #checkpoint} forces the segment data appended since the previous checkpoint to disk and writes
+ * {@code index.dat} with the per-account chains, the end of the data and the journal LSN it covers. On
+ * open, anything after that end is ignored; the journal replays it on top. A checkpoint covers the store
+ * as of the last {@link #mark}, and appends may continue while it is written: the first append to an
+ * account after the mark saves the account's chain as it was.
+ *
+ * Compaction writes the history it keeps as a new generation of the store next to the current one:
+ * {@link #nextGeneration} starts it, and its first checkpoint writes {@code index-GGGGGG.dat}, which is
+ * the moment it replaces the previous generation. {@link #open} uses the newest generation that has an
+ * index and deletes the files of any other, so a crash before or after that moment leaves exactly one
+ * generation. Generation 0 uses the file names above; later ones add the generation to each name.
+ *
+ * Calls other than {@link #checkpoint} are synchronized on the store.
+ */
+public final class MappedTransactionStore implements TransactionStore, Closeable {
+
+    public static final int SEGMENT_SIZE = 64 << 20;
+
+    private static final int INDEX_MAGIC = 0x424B5449; // "BKTI"
+    private static final String INDEX_FILE = "index.dat";
+    // Files of any generation: group 1 or 2 is the generation, or neither for generation 0
+    private static final Pattern STORE_FILE = Pattern.compile("(?:index-(\\d{6})\\.dat|segment-(\\d{6})-\\d{6}\\.seg|index\\.dat|segment-\\d{6}\\.seg)(?:\\.tmp)?");
+    private static final int HEADER_SIZE = Integer.BYTES + 3 * Long.BYTES + Byte.BYTES;
+    private static final long NONE = -1L;
+    private static final TransactionType[] TRANSACTION_TYPES = TransactionType.values();
+
+    // Newest record of one account and how many it has. Replaced, never changed, so checkpoints can read it.
+    private static final class Chain {
+        private static final Chain EMPTY = new Chain(NONE, 0);
+        private final long head;
+        private final int count;
+
+        private Chain(long head, int count) {
+            this.head = head;
+            this.count = count;
+        }
+    }
+
+    // The store as of a mark; chains changed since the mark keep their earlier value in preImages
+    private static final class Mark {
+        private final long end;
+        private final long size;
+        private final Map<String, Chain> preImages = new ConcurrentHashMap<>();
+
+        private Mark(long end, long size) {
+            this.end = end;
+            this.size = size;
+        }
+    }
+
+    private final Path directory;
+    private final int generation;
+    private final Map<String, Chain> chains = new ConcurrentHashMap<>();
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private long end; // Position the next record is written at
+    private long size;
+    private volatile long checkpointLsn;
+    private long checkpointedEnd; // Data before this position is already on disk
+    private Mark mark;
+
+    private MappedTransactionStore(Path directory, int generation) {
+        this.directory = directory;
+        this.generation = generation;
+    }
+
+    /**
+     * Opens the store in {@code directory}, creating it if needed, as of its last checkpoint.
+     */
+    public static MappedTransactionStore open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        int newest = 0;
+        for (Path file : storeFiles(directory)) {
+            if (file.getFileName().toString().matches("index-\\d{6}\\.dat")) {
+                newest = Math.max(newest, generationOf(file));
+            }
+        }
+        MappedTransactionStore store = new MappedTransactionStore(directory, newest);
+        store.deleteFiles(other -> other != store.generation); // Replaced, or never committed
+        Path indexFile = store.indexFile();
+        if (Files.exists(indexFile)) {
+            store.readIndex(indexFile);
+        }
+        return store;
+    }
+
+    /**
+     * An empty store for the next generation, in the same directory. It replaces this one once it has
+     * been checkpointed; until then, opening the directory ignores it.
+     */
+    public MappedTransactionStore nextGeneration() throws IOException {
+        MappedTransactionStore next = new MappedTransactionStore(directory, generation + 1);
+        next.deleteFiles(other -> other == next.generation); // Left by a compaction that did not finish
+        return next;
+    }
+
+    public int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Deletes this generation's files. Call it on a closed store that has been replaced or abandoned.
+     */
+    public void deleteFiles() throws IOException {
+        deleteFiles(other -> other == generation);
+    }
+
+    /**
+     * Numbers of every account with at least one transaction, open or not, in no particular order.
+     */
+    public synchronized List<String> accountNumbers() {
+        return new ArrayList<>(chains.keySet());
+    }
+
+    /**
+     * LSN of the last journal record included at the last checkpoint.
+     */
+    public long getCheckpointLsn() {
+        return checkpointLsn;
+    }
+
+    /**
+     * Marks the point the next {@link #checkpoint} covers. The caller makes sure no append is in progress.
+     */
+    public synchronized void mark() {
+        mark = new Mark(end, size);
+    }
+
+    /**
+     * Makes everything appended up to the last {@link #mark} durable and records that it covers the
+     * journal up to {@code lsn}; without a mark, everything appended so far. Appends may run meanwhile.
+     * The index is swapped in atomically, so a crash leaves the previous checkpoint intact.
+     *
+     * @return bytes written: the segment data forced to disk plus the index
+     */
+    public long checkpoint(long lsn) throws IOException {
+        Mark taken;
+        long from;
+        List<MappedByteBuffer> dirty;
+        synchronized (this) {
+            if (mark == null) {
+                mark();
+            }
+            taken = mark;
+            from = Math.min(checkpointedEnd, taken.end);
+            dirty = from >= taken.end ? List.of() : new ArrayList<>(segments.subList(segmentOf(from), segmentOf(taken.end - 1) + 1));
+        }
+
+        for (int i = 0; i < dirty.size(); i++) {
+            int segment = segmentOf(from) + i;
+            long segmentStart = (long) segment * SEGMENT_SIZE;
+            int offset = (int) Math.max(0L, from - segmentStart);
+            int limit = (int) Math.min(SEGMENT_SIZE, taken.end - segmentStart);
+            dirty.get(i).force(offset, limit - offset);
+        }
+
+        // Read the current chain before its pre-image: an append saves the pre-image first
+        List<Map.Entry<String, Chain>> marked = new ArrayList<>(chains.size());
+        for (Map.Entry<String, Chain> entry : chains.entrySet()) {
+            Chain chain = entry.getValue();
+            Chain preImage = taken.preImages.get(entry.getKey());
+            if (preImage != null) {
+                chain = preImage;
+            }
+            if (chain != Chain.EMPTY) {
+                marked.add(Map.entry(entry.getKey(), chain));
+            }
+        }
+
+        Path tempFile = directory.resolve(indexFile().getFileName() + ".tmp");
+        try (BinarySnapshots.Writer out = new BinarySnapshots.Writer(tempFile)) {
+            out.putInt(INDEX_MAGIC);
+            out.putInt(BinarySnapshots.FORMAT_VERSION);
+            out.putLong(lsn);
+            out.putLong(taken.end);
+            out.putLong(taken.size);
+            out.putInt(marked.size());
+            for (Map.Entry<String, Chain> entry : marked) {
+                out.putString(entry.getKey());
+                out.putLong(entry.getValue().head);
+                out.putInt(entry.getValue().count);
+            }
+            out.finish();
+        }
+        long indexBytes = Files.size(tempFile);
+        Files.move(tempFile, indexFile(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        synchronized (this) {
+            if (mark == taken) {
+                mark = null;
+            }
+            checkpointedEnd = taken.end;
+        }
+        checkpointLsn = lsn;
+        return taken.end - from + indexBytes;
+    }
+
+    /**
+     * @throws UncheckedIOException if a new segment cannot be mapped
+     */
+    @Override
+    public synchronized void append(Transaction transaction) {
+        byte[] accountNumber = utf8(transaction.getAccountNumber());
+        byte[] transactionId = utf8(transaction.getTransactionId());
+        byte[] description = utf8(transaction.getDescription());
+        int length = HEADER_SIZE + 3 * Short.BYTES + accountNumber.length + transactionId.length + description.length;
+
+        if (offsetOf(end) + length > SEGMENT_SIZE) {
+            end = (long) (segmentOf(end) + 1) * SEGMENT_SIZE; // Start the next segment
+        }
+        MappedByteBuffer segment = segment(segmentOf(end));
+        Chain chain = chains.getOrDefault(transaction.getAccountNumber(), Chain.EMPTY);
+        if (mark != null) {
+            mark.preImages.putIfAbsent(transaction.getAccountNumber(), chain);
+        }
+
+        int offset = offsetOf(end);
+        segment.putInt(offset, length);
+        segment.putLong(offset + 4, chain.head);
+        segment.putLong(offset + 12, transaction.getTimestamp());
+        segment.putLong(offset + 20, transaction.getAmount());
+        segment.put(offset + 28, (byte) transaction.getTransactionType().ordinal());
+        offset = putBytes(segment, offset + HEADER_SIZE, accountNumber);
+        offset = putBytes(segment, offset, transactionId);
+        putBytes(segment, offset, description);
+
+        chains.put(transaction.getAccountNumber(), new Chain(end, chain.count + 1));
+        end += length;
+        size++;
+    }
+
+    @Override
+    public synchronized long size() {
+        return size;
+    }
+
+    @Override
+    public synchronized int count(String accountNumber) {
+        Chain chain = chains.get(accountNumber);
+        return chain == null ? 0 : chain.count;
+    }
+
+    // The cursor is the position of the next record to return
+    @Override
+    public synchronized HistoryPage page(String accountNumber, long cursor, int pageSize) {
+        long position = cursor == NEWEST ? head(accountNumber) : checkCursor(accountNumber, cursor);
+        List<Transaction> page = new ArrayList<>(Math.min(pageSize, count(accountNumber)));
+        while (position != NONE && page.size() < pageSize) {
+            page.add(read(position));
+            position = previous(position);
+        }
+        return new HistoryPage(page, position);
+    }
+
+    @Override
+    public synchronized void forEachNewestFirst(String accountNumber, Predicate<Transaction> action) {
+        for (long position = head(accountNumber); position != NONE; position = previous(position)) {
+            if (!action.test(read(position))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Forgets every transaction. The segment files are reused from the start.
+     */
+    @Override
+    public synchronized void clear() {
+        chains.clear();
+        end = 0L;
+        size = 0L;
+        checkpointedEnd = 0L;
+        mark = null;
+    }
+
+    /**
+     * Releases the segments; the mappings themselves go away once they are garbage collected.
+     */
+    @Override
+    public synchronized void close() {
+        segments.clear();
+    }
+
+    private long head(String accountNumber) {
+        Chain chain = chains.get(accountNumber);
+        return chain == null ? NONE : chain.head;
+    }
+
+    // A cursor must be the start of one of the account's records. Checking the range first keeps a forged
+    // cursor from mapping segments; the account check catches positions inside or between records.
+    private long checkCursor(String accountNumber, long cursor) {
+        if (cursor < 0 || cursor >= end || count(accountNumber) == 0) {
+            throw new IllegalArgumentException("Invalid history cursor: " + cursor);
+        }
+        try {
+            MappedByteBuffer segment = segment(segmentOf(cursor));
+            int offset = offsetOf(cursor);
+            int length = segment.getInt(offset);
+            if (length < HEADER_SIZE || offset + length > SEGMENT_SIZE || !getString(segment, offset + HEADER_SIZE).equals(accountNumber)) {
+                throw new IllegalArgumentException("Invalid history cursor: " + cursor);
+            }
+        } catch (IndexOutOfBoundsException | NegativeArraySizeException e) {
+            throw new IllegalArgumentException("Invalid history cursor: " + cursor, e);
+        }
+        return cursor;
+    }
+
+    private long previous(long position) {
+        return segment(segmentOf(position)).getLong(offsetOf(position) + 4);
+    }
+
+    private Transaction read(long position) {
+        MappedByteBuffer segment = segment(segmentOf(position));
+        int offset = offsetOf(position);
+        long timestamp = segment.getLong(offset + 12);
+        long amount = segment.getLong(offset + 20);
+        TransactionType transactionType = TRANSACTION_TYPES[segment.get(offset + 28)];
+
+        offset += HEADER_SIZE;
+        String accountNumber = getString(segment, offset);
+        offset += Short.BYTES + segment.getShort(offset);
+        String transactionId = getString(segment, offset);
+        offset += Short.BYTES + segment.getShort(offset);
+        return new Transaction(transactionId, timestamp, accountNumber, transactionType, amount, getString(segment, offset));
+    }
+
+    // Maps segments up to and including the requested one on first use.
+    private MappedByteBuffer segment(int index) {
+        try {
+            while (segments.size() <= index) {
+                Path file = directory.resolve(generation == 0 ? String.format("segment-%06d.seg", segments.size())
+                        : String.format("segment-%06d-%06d.seg", generation, segments.size()));
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                    segments.add(channel.map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_SIZE));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error mapping transaction segment " + index, e);
+        }
+        return segments.get(index);
+    }
+
+    private Path indexFile() {
+        return directory.resolve(generation == 0 ? INDEX_FILE : String.format("index-%06d.dat", generation));
+    }
+
+    private void deleteFiles(IntPredicate generations) throws IOException {
+        for (Path file : storeFiles(directory)) {
+            if (generations.test(generationOf(file))) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private static List<Path> storeFiles(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> STORE_FILE.matcher(file.getFileName().toString()).matches()).toList();
+        }
+    }
+
+    private static int generationOf(Path file) {
+        Matcher matcher = STORE_FILE.matcher(file.getFileName().toString());
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Not a transaction store file: " + file);
+        }
+        String generation = matcher.group(1) != null ? matcher.group(1) : matcher.group(2);
+        return generation == null ? 0 : Integer.parseInt(generation);
+    }
+
+    private void readIndex(Path indexFile) throws IOException {
+        try (BinarySnapshots.Reader in = new BinarySnapshots.Reader(indexFile)) {
+            checkpointLsn = in.readHeader(INDEX_MAGIC);
+            end = in.getLong();
+            size = in.getLong();
+            int accounts = in.getCount();
+            for (int i = 0; i < accounts; i++) {
+                String accountNumber = in.getString();
+                long head = in.getLong();
+                chains.put(accountNumber, new Chain(head, in.getCount()));
+            }
+            in.verifyChecksum();
+        }
+        checkpointedEnd = end;
+    }
+
+    private static int segmentOf(long position) {
+        return (int) (position / SEGMENT_SIZE);
+    }
+
+    private static int offsetOf(long position) {
+        return (int) (position % SEGMENT_SIZE);
+    }
+
+    private static byte[] utf8(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Transaction field too long: " + bytes.length + " bytes");
+        }
+        return bytes;
+    }
+
+    private static int putBytes(MappedByteBuffer segment, int offset, byte[] bytes) {
+        segment.putShort(offset, (short) bytes.length);
+        segment.put(offset + Short.BYTES, bytes);
+        return offset + Short.BYTES + bytes.length;
+    }
+
+    private static String getString(MappedByteBuffer segment, int offset) {
+        byte[] bytes = new byte[segment.getShort(offset)];
+        segment.get(offset + Short.BYTES, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,72 @@
+package ledger;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.regex.Pattern;
+
+/**
+ * Money as a primitive {@code long} count of cents.
+ *
+ * All balances and amounts are kept in minor units so that arithmetic and totals are exact. Every
+ * operation that can overflow goes through {@link Math#addExact}/{@link Math#subtractExact} and fails
+ * with an {@link ArithmeticException} instead of silently wrapping.
+ */
+public final class Money {
+
+    public static final int SCALE = 2;
+    private static final long CENTS_PER_UNIT = 100L;
+    private static final Pattern PLAIN_AMOUNT = Pattern.compile("-?\\d+(\\.\\d{1," + SCALE + "})?"); // No exponent or plus sign
+
+    private Money() {
+    }
+
+    /**
+     * Parses an amount such as {@code "12"}, {@code "12.5"} or {@code "12.50"} into cents. Only plain
+     * decimals are accepted: {@code "1e3"}, {@code "+5"} and {@code ".5"} are not amounts.
+     *
+     * @throws NumberFormatException if the text is not a plain decimal, has more than two decimal places or does not fit in a long
+     */
+    public static long parse(String text) {
+        String trimmed = text.trim();
+        if (!PLAIN_AMOUNT.matcher(trimmed).matches()) {
+            throw new NumberFormatException("Amount must be a plain number with at most " + SCALE + " decimal places: " + text);
+        }
+        try {
+            return new BigDecimal(trimmed).movePointRight(SCALE).longValueExact();
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Amount does not fit in range: " + text);
+        }
+    }
+
+    /**
+     * Formats cents as {@code 1234.50}, without grouping or currency symbol.
+     */
+    public static String format(long cents) {
+        StringBuilder builder = new StringBuilder(24);
+        if (cents < 0) {
+            builder.append('-');
+        }
+        long units = Math.abs(cents / CENTS_PER_UNIT);
+        long remainder = Math.abs(cents % CENTS_PER_UNIT);
+        builder.append(units).append('.');
+        if (remainder < 10) {
+            builder.append('0');
+        }
+        return builder.append(remainder).toString();
+    }
+
+    public static long add(long a, long b) {
+        return Math.addExact(a, b);
+    }
+
+    public static long subtract(long a, long b) {
+        return Math.subtractExact(a, b);
+    }
+
+    /**
+     * Converts a legacy floating-point amount to cents, rounding half-even to the nearest cent.
+     */
+    public static long fromDouble(double amount) {
+        return BigDecimal.valueOf(amount).setScale(SCALE, RoundingMode.HALF_EVEN).movePointRight(SCALE).longValueExact();
+    }
+}
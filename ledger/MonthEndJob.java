@@ -0,0 +1,336 @@
+package ledger;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Month-end processing for one calendar month: interest for every SAVINGS account and a statement file
+ * for every open account.
+ *
+ * The accounts are split in halves on a {@link ForkJoinPool} down to batches of {@link #BATCH_SIZE}.
+ * A batch reads each account's activity since the start of the month, works out its interest, posts the
+ * interest of the whole batch with one {@link LedgerEngine#postInterest} call (one journal write) and
+ * then writes the statements. Only the activity reads and the posting take the engine's locks, each
+ * briefly, so batches run in parallel.
+ *
+ * The job is safe to run again after a crash partway through, or at any other time: an account whose
+ * history already holds interest for the month is not paid again, and its statement shows the interest
+ * that was paid. Each statement is written to a temporary file and renamed, so a statement file is
+ * always complete, and a rerun replaces it with the same content. A statement is only written once the
+ * account's interest is settled.
+ *
+ * Interest is simple interest at an annual rate in basis points on a 365-day year, on the balance held at
+ * every moment of the month, rounded half-even to the cent.
+ */
+public final class MonthEndJob {
+
+    public static final long DEFAULT_INTEREST_BASIS_POINTS = 200; // 2.00% a year
+    public static final int BATCH_SIZE = 256;
+    private static final BigDecimal BASIS_POINT_MILLIS_PER_YEAR = BigDecimal.valueOf(10_000L * 365 * 24 * 60 * 60 * 1000);
+    private static final DateTimeFormatter ROW_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss", Locale.ROOT);
+
+    public static final class Summary {
+        private final YearMonth period;
+        private final Path directory;
+        private final Totals totals;
+        private final int parallelism;
+        private final long elapsedNanos;
+
+        private Summary(YearMonth period, Path directory, Totals totals, int parallelism, long elapsedNanos) {
+            this.period = period;
+            this.directory = directory;
+            this.totals = totals;
+            this.parallelism = parallelism;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public long getStatementsWritten() {
+            return totals.statements;
+        }
+
+        public long getInterestPostings() {
+            return totals.postings;
+        }
+
+        public long getInterestPosted() {
+            return totals.interest;
+        }
+
+        public long getAlreadyPosted() {
+            return totals.alreadyPosted;
+        }
+
+        public long getFailures() {
+            return totals.failures;
+        }
+
+        public void print(PrintStream out) {
+            double seconds = elapsedNanos / 1e9;
+            out.println("Month-end complete: " + period);
+            out.println("  Accounts: " + totals.accounts);
+            out.println("  Statements written: " + totals.statements + " (under " + directory + ")");
+            out.println("  Interest posted: " + totals.postings + " accounts, $" + Money.format(totals.interest));
+            out.println("  Interest already posted: " + totals.alreadyPosted + " accounts");
+            out.println("  Failures: " + totals.failures);
+            out.printf(Locale.ROOT, "  Elapsed: %.3f s (%.0f accounts/s on %d threads)%n", seconds,
+                    seconds > 0 ? totals.accounts / seconds : 0.0, parallelism);
+        }
+    }
+
+    private final LedgerEngine engine;
+    private final Path statementDirectory;
+    private final long interestBasisPoints;
+    private final ZoneId zone;
+
+    public MonthEndJob(LedgerEngine engine, Path statementDirectory, long interestBasisPoints, ZoneId zone) {
+        this.engine = engine;
+        this.statementDirectory = statementDirectory;
+        this.interestBasisPoints = interestBasisPoints;
+        this.zone = zone;
+    }
+
+    /**
+     * Runs the month-end for {@code period} on {@code pool}. Statements are written to
+     * {@code <statement directory>/<yyyy-MM>/<last two characters of the account number>/<account number>.txt};
+     * the last level spreads the files over many directories, since creating files in one directory
+     * does not run in parallel on most file systems.
+     *
+     * @throws IllegalArgumentException if the month has not ended yet
+     */
+    public Summary run(YearMonth period, ForkJoinPool pool) throws IOException {
+        long start = System.nanoTime();
+        Month month = new Month(period, period.atDay(1).atStartOfDay(zone).toInstant().toEpochMilli(),
+                period.plusMonths(1).atDay(1).atStartOfDay(zone).toInstant().toEpochMilli(), statementDirectory.resolve(period.toString()));
+        if (System.currentTimeMillis() < month.end) {
+            throw new IllegalArgumentException("The month " + period + " has not ended yet.");
+        }
+        Files.createDirectories(month.directory);
+
+        List<String> accountNumbers = engine.accountNumbers();
+        Totals totals = pool.invoke(new Batches(month, accountNumbers, 0, accountNumbers.size()));
+        return new Summary(period, month.directory, totals, pool.getParallelism(), System.nanoTime() - start);
+    }
+
+    private static final class Month {
+        private final YearMonth period;
+        private final long start; // Epoch millis, inclusive
+        private final long end; // Epoch millis, exclusive
+        private final Path directory;
+        private final String interestDescription;
+
+        private Month(YearMonth period, long start, long end, Path directory) {
+            this.period = period;
+            this.start = start;
+            this.end = end;
+            this.directory = directory;
+            this.interestDescription = LedgerEngine.interestDescription(period);
+        }
+    }
+
+    private static final class Totals {
+        private long accounts;
+        private long statements;
+        private long postings;
+        private long interest; // In cents
+        private long alreadyPosted;
+        private long failures;
+
+        private Totals add(Totals other) {
+            accounts += other.accounts;
+            statements += other.statements;
+            postings += other.postings;
+            interest += other.interest;
+            alreadyPosted += other.alreadyPosted;
+            failures += other.failures;
+            return this;
+        }
+    }
+
+    @SuppressWarnings("serial") // Tasks are never serialized
+    private final class Batches extends RecursiveTask<Totals> {
+        private final Month month;
+        private final List<String> accountNumbers;
+        private final int from;
+        private final int to;
+
+        private Batches(Month month, List<String> accountNumbers, int from, int to) {
+            this.month = month;
+            this.accountNumbers = accountNumbers;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Totals compute() {
+            if (to - from <= BATCH_SIZE) {
+                return processBatch(month, accountNumbers.subList(from, to));
+            }
+            int middle = (from + to) >>> 1;
+            Batches left = new Batches(month, accountNumbers, from, middle);
+            left.fork();
+            Totals totals = new Batches(month, accountNumbers, middle, to).compute();
+            return totals.add(left.join());
+        }
+    }
+
+    private Totals processBatch(Month month, List<String> batch) {
+        Totals totals = new Totals();
+        List<Statement> statements = new ArrayList<>(batch.size());
+        List<Statement> payees = new ArrayList<>();
+        List<InterestPosting> postings = new ArrayList<>();
+        for (String accountNumber : batch) {
+            AccountActivity activity = engine.accountActivity(accountNumber, month.start);
+            if (activity == null) {
+                continue; // Closed since the job started
+            }
+            Statement statement = new Statement(activity, month);
+            statements.add(statement);
+            totals.accounts++;
+            if (statement.account.getAccountType() != AccountType.SAVINGS) {
+                continue;
+            }
+            if (statement.interest >= 0) {
+                totals.alreadyPosted++;
+                continue;
+            }
+            long interest = interestOn(statement.balanceMillis);
+            if (interest > 0) {
+                postings.add(new InterestPosting(accountNumber, interest, activity.getTransactionCount()));
+                payees.add(statement);
+            } else {
+                statement.interest = 0L;
+            }
+        }
+
+        if (!postings.isEmpty()) {
+            List<LedgerResult> results = engine.postInterest(month.period, postings);
+            for (int i = 0; i < results.size(); i++) {
+                LedgerResult result = results.get(i);
+                Statement statement = payees.get(i);
+                if (result.isSuccess()) {
+                    statement.interest = postings.get(i).getAmount();
+                    totals.postings++;
+                    totals.interest += statement.interest;
+                } else if (result.getStatus() == LedgerResult.Status.ALREADY_POSTED) {
+                    totals.alreadyPosted++; // By a run alongside this one, which writes the statement
+                } else if (result.getStatus() != LedgerResult.Status.ACCOUNT_NOT_FOUND) {
+                    totals.failures++;
+                    System.err.println("Interest for account " + statement.account.getAccountNumber() + " not posted: " + result.getMessage());
+                }
+            }
+        }
+
+        for (Statement statement : statements) {
+            if (statement.account.getAccountType() == AccountType.SAVINGS && statement.interest < 0) {
+                continue; // Not settled; a rerun writes it
+            }
+            try {
+                write(statement, month);
+                totals.statements++;
+            } catch (IOException e) {
+                totals.failures++;
+                System.err.println("Error writing statement for account " + statement.account.getAccountNumber() + ": " + e.getMessage());
+            }
+        }
+        return totals;
+    }
+
+    private long interestOn(BigInteger balanceMillis) {
+        return new BigDecimal(balanceMillis.multiply(BigInteger.valueOf(interestBasisPoints)))
+                .divide(BASIS_POINT_MILLIS_PER_YEAR, 0, RoundingMode.HALF_EVEN).longValueExact();
+    }
+
+    private void write(Statement statement, Month month) throws IOException {
+        String accountNumber = statement.account.getAccountNumber();
+        Path directory = month.directory.resolve(accountNumber.substring(Math.max(0, accountNumber.length() - 2)));
+        Files.createDirectories(directory);
+        Path file = directory.resolve(accountNumber + ".txt");
+        Path tempFile = directory.resolve(accountNumber + ".txt.tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+            out.write(String.format(Locale.ROOT, "Statement for account %s (%s)%n", accountNumber, statement.account.getAccountType()));
+            out.write(String.format(Locale.ROOT, "Account holder: %s%n", statement.account.getName()));
+            out.write(String.format(Locale.ROOT, "Period: %s to %s%n", month.period.atDay(1), month.period.atEndOfMonth()));
+            out.write(String.format(Locale.ROOT, "Opening balance: $%s%n%n", Money.format(statement.openingBalance)));
+            out.write(String.format(Locale.ROOT, "%-19s  %-12s  %-12s  %14s  %14s  %s%n", "Date", "Transaction", "Type", "Amount", "Balance", "Description"));
+            long balance = statement.openingBalance;
+            for (int i = statement.rows.size() - 1; i >= 0; i--) { // Oldest first
+                Transaction transaction = statement.rows.get(i);
+                balance = Money.add(balance, transaction.getSignedAmount());
+                out.write(String.format(Locale.ROOT, "%-19s  %-12s  %-12s  %14s  %14s  %s%n",
+                        ROW_TIME.format(Instant.ofEpochMilli(transaction.getTimestamp()).atZone(zone)), transaction.getTransactionId(),
+                        transaction.getTransactionType(), Money.format(transaction.getAmount()), Money.format(balance), transaction.getDescription()));
+            }
+            out.write(String.format(Locale.ROOT, "%nClosing balance: $%s%n", Money.format(statement.closingBalance)));
+            if (statement.account.getAccountType() == AccountType.SAVINGS) {
+                long monthMillis = month.end - month.start;
+                long averageBalance = new BigDecimal(statement.balanceMillis).divide(BigDecimal.valueOf(monthMillis), 0, RoundingMode.HALF_EVEN).longValueExact();
+                out.write(String.format(Locale.ROOT, "Average balance: $%s%n", Money.format(averageBalance)));
+                out.write(String.format(Locale.ROOT, "Interest at %d.%02d%% a year, credited after the period: $%s%n",
+                        interestBasisPoints / 100, interestBasisPoints % 100, Money.format(statement.interest)));
+            }
+        }
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+
+    // One account's month, worked back from its balance now through its transactions, newest first.
+    private static final class Statement {
+        private final Account account;
+        private final List<Transaction> rows = new ArrayList<>(); // Those in the month, newest first
+        private final long openingBalance;
+        private final long closingBalance;
+        private final BigInteger balanceMillis; // Sum over the month of each balance times how long it was held
+        private long interest = -1L; // For the month, once known; -1 while not settled
+
+        private Statement(AccountActivity activity, Month month) {
+            account = activity.getAccount();
+            long balance = account.getBalance();
+            long heldUntil = Long.MAX_VALUE;
+            long closing = 0L;
+            boolean closingKnown = false;
+            BigInteger held = BigInteger.ZERO;
+            for (Transaction transaction : activity.getTransactions()) {
+                long timestamp = transaction.getTimestamp();
+                if (timestamp >= month.end) {
+                    if (transaction.getTransactionType() == TransactionType.INTEREST && transaction.getDescription().equals(month.interestDescription)) {
+                        interest = transaction.getAmount();
+                    }
+                } else {
+                    if (!closingKnown) {
+                        closing = balance;
+                        closingKnown = true;
+                    }
+                    rows.add(transaction);
+                }
+                held = held.add(heldDuring(month, balance, timestamp, heldUntil));
+                balance = Money.subtract(balance, transaction.getSignedAmount()); // The balance before it
+                heldUntil = timestamp;
+            }
+            openingBalance = balance; // Zero for accounts opened during the month
+            closingBalance = closingKnown ? closing : balance;
+            balanceMillis = held.add(heldDuring(month, balance, month.start, heldUntil));
+        }
+
+        private static BigInteger heldDuring(Month month, long balance, long from, long until) {
+            long millis = Math.min(until, month.end) - Math.max(from, month.start);
+            return millis > 0 && balance != 0 ? BigInteger.valueOf(balance).multiply(BigInteger.valueOf(millis)) : BigInteger.ZERO;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package ledger;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Calendar-month withdrawal counters for SAVINGS accounts.
+ *
+ * Each account keeps the month it last withdrew in and how many withdrawals it made that month. A
+ * withdrawal in a later month starts the counter over, so checking the monthly limit is a single map
+ * lookup no matter how long the account's history is. The boundaries of the current month are cached
+ * so the common case does not touch the calendar at all.
+ *
+ * The map is safe for concurrent use. A single account's counter must only be updated by one thread at
+ * a time, which {@link LedgerEngine} guarantees through its per-account locks.
+ */
+public final class MonthlyWithdrawalCounter {
+
+    private static final class Counter {
+        private int monthKey;
+        private int count;
+    }
+
+    // Boundaries of the newest month seen, swapped as a whole so readers never see a torn range
+    private static final class CachedMonth {
+        private final long start;
+        private final long nextStart;
+        private final int monthKey;
+
+        private CachedMonth(long start, long nextStart, int monthKey) {
+            this.start = start;
+            this.nextStart = nextStart;
+            this.monthKey = monthKey;
+        }
+    }
+
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final ZoneId zone;
+    private volatile CachedMonth cachedMonth = new CachedMonth(Long.MAX_VALUE, Long.MIN_VALUE, 0);
+
+    public MonthlyWithdrawalCounter(ZoneId zone) {
+        this.zone = zone;
+    }
+
+    /**
+     * Counts a withdrawal made at {@code timestamp}. Withdrawals older than the month already being
+     * counted for the account are ignored.
+     */
+    public void record(String accountNumber, long timestamp) {
+        int monthKey = monthKey(timestamp);
+        Counter counter = counters.computeIfAbsent(accountNumber, key -> new Counter());
+        if (monthKey > counter.monthKey) {
+            counter.monthKey = monthKey;
+            counter.count = 1;
+        } else if (monthKey == counter.monthKey) {
+            counter.count++;
+        }
+    }
+
+    /**
+     * Number of withdrawals the account has made in the calendar month containing {@code now}.
+     */
+    public int count(String accountNumber, long now) {
+        Counter counter = counters.get(accountNumber);
+        return counter == null || counter.monthKey != monthKey(now) ? 0 : counter.count;
+    }
+
+    /**
+     * Start of the calendar month containing {@code timestamp}, in epoch milliseconds.
+     */
+    public long monthStart(long timestamp) {
+        return Instant.ofEpochMilli(timestamp).atZone(zone).toLocalDate().withDayOfMonth(1).atStartOfDay(zone).toInstant().toEpochMilli();
+    }
+
+    public void remove(String accountNumber) {
+        counters.remove(accountNumber);
+    }
+
+    public void clear() {
+        counters.clear();
+    }
+
+    private int monthKey(long timestamp) {
+        CachedMonth cached = cachedMonth;
+        if (timestamp >= cached.start && timestamp < cached.nextStart) {
+            return cached.monthKey;
+        }
+
+        LocalDate date = Instant.ofEpochMilli(timestamp).atZone(zone).toLocalDate();
+        int monthKey = date.getYear() * 12 + date.getMonthValue() - 1;
+        if (timestamp >= cached.nextStart) {
+            // Time only moves forward on the hot path, so remember the newest month seen
+            ZonedDateTime monthStart = date.withDayOfMonth(1).atStartOfDay(zone);
+            cachedMonth = new CachedMonth(monthStart.toInstant().toEpochMilli(),
+                    monthStart.plusMonths(1).toInstant().toEpochMilli(), monthKey);
+        }
+        return monthKey;
+    }
+}
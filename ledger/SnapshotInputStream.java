@@ -0,0 +1,64 @@
+package ledger;
+
+import java.io.*;
+
+/**
+ * Reads the current snapshots and the ones the original console application wrote.
+ *
+ * The original snapshots hold the data classes as nested classes of {@code BankingConsoleApp}, with
+ * balances and amounts as doubles. Their class descriptors are swapped for the legacy layouts below,
+ * which convert themselves to cents as they are read. Any other layout of those classes is rejected.
+ */
+class SnapshotInputStream extends ObjectInputStream {
+
+    private static final String LEGACY_PREFIX = "BankingConsoleApp$";
+    private static final long DOUBLE_LAYOUT_ACCOUNT_UID = 0xB96E67A1DD7395D0L;
+    private static final long DOUBLE_LAYOUT_TRANSACTION_UID = 0x324EEE8E9C08F793L;
+
+    SnapshotInputStream(InputStream in) throws IOException {
+        super(in);
+    }
+
+    @Override
+    protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
+        ObjectStreamClass descriptor = super.readClassDescriptor();
+        if (!descriptor.getName().startsWith(LEGACY_PREFIX)) {
+            return descriptor;
+        }
+
+        return switch (descriptor.getName().substring(LEGACY_PREFIX.length())) {
+            case "Account" -> ObjectStreamClass.lookup(LegacyAccount.class);
+            case "Transaction" -> ObjectStreamClass.lookup(LegacyTransaction.class);
+            case "AccountType" -> ObjectStreamClass.lookup(AccountType.class);
+            case "TransactionType" -> ObjectStreamClass.lookup(TransactionType.class);
+            default -> descriptor;
+        };
+    }
+
+    private static class LegacyAccount implements Serializable {
+        private static final long serialVersionUID = DOUBLE_LAYOUT_ACCOUNT_UID;
+        private String accountNumber;
+        private String name;
+        private String address;
+        private String phoneNumber;
+        private double balance;
+        private AccountType accountType;
+
+        private Object readResolve() {
+            return new Account(accountNumber, name, address, phoneNumber, Money.fromDouble(balance), accountType);
+        }
+    }
+
+    private static class LegacyTransaction implements Serializable {
+        private static final long serialVersionUID = DOUBLE_LAYOUT_TRANSACTION_UID;
+        private String accountNumber;
+        private TransactionType transactionType;
+        private double amount;
+        private String description;
+        private String transactionId;
+
+        private Object readResolve() {
+            return new Transaction(transactionId, 0L, accountNumber, transactionType, Money.fromDouble(amount), description);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package ledger;
+
+import java.io.Serializable;
+import java.time.Instant;
+
+public class Transaction implements Serializable { // Implement Serializable
+    private static final long serialVersionUID = 2L; // Amount in cents; older transactions.dat files are read through SnapshotInputStream
+    private final String accountNumber;
+    private final TransactionType transactionType;
+    private final long amount; // In cents
+    private final String description;
+    private final String transactionId;
+    private final long timestamp; // Epoch millis; 0 for transactions recorded before timestamps existed
+
+    // New transactions get their ID from LedgerIds; replayed and loaded ones keep the ID and time they were first recorded with
+    public Transaction(String transactionId, long timestamp, String accountNumber, TransactionType transactionType, long amount, String description) {
+        this.timestamp = timestamp;
+        this.accountNumber = accountNumber;
+        this.transactionType = transactionType;
+        this.amount = amount;
+        this.description = description;
+        this.transactionId = transactionId;
+    }
+
+    public String getAccountNumber() {
+        return accountNumber;
+    }
+
+    public TransactionType getTransactionType() {
+        return transactionType;
+    }
+
+    public long getAmount() {
+        return amount;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public String getTransactionId() {
+        return transactionId;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    // The change to the account's balance, in cents
+    public long getSignedAmount() {
+        return switch (transactionType) {
+            case DEPOSIT, TRANSFER_IN, INTEREST, CARRIED_FORWARD -> amount;
+            case WITHDRAWAL, TRANSFER_OUT -> -amount;
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "Transaction{" +
+               "transactionId='" + transactionId + '\'' +
+               (timestamp > 0 ? ", timestamp=" + Instant.ofEpochMilli(timestamp) : "") +
+               ", accountNumber='" + accountNumber + '\'' +
+               ", transactionType=" + transactionType +
+               ", amount=" + Money.format(amount) +
+               ", description='" + description + '\'' +
+               '}';
+    }
+}
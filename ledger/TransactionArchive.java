@@ -0,0 +1,220 @@
+package ledger;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Transactions moved out of the live history by compaction, in gzip-compressed segment files partitioned
+ * by the calendar month of each transaction: {@code <yyyy-MM>-<generation>.gz}. A compaction writes at
+ * most one segment per month, named after the {@link MappedTransactionStore} generation it creates, and
+ * the segments only count once that generation has been checkpointed; {@link #open} deletes any newer
+ * ones, left by a compaction that did not finish.
+ * <pre>
+ * [int magic][int version] then per transaction:
+ * [byte 1][str accountNumber][str transactionId][long timestamp][byte type][long amount][str description]
+ * and [byte 0] after the last one
+ * </pre>
+ * Within a segment each account's transactions are together and oldest first. Reading one account's
+ * month decompresses that month's segments, which suits occasional lookups rather than the hot path.
+ */
+public final class TransactionArchive {
+
+    private static final int MAGIC = 0x424B4152; // "BKAR"
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final Pattern SEGMENT_FILE = Pattern.compile("(\\d{4}-\\d{2})-(\\d{6})\\.gz");
+    private static final TransactionType[] TRANSACTION_TYPES = TransactionType.values();
+
+    private final Path directory;
+    private final ZoneId zone;
+
+    private TransactionArchive(Path directory, ZoneId zone) {
+        this.directory = directory;
+        this.zone = zone;
+    }
+
+    /**
+     * Opens the archive in {@code directory}, creating it if needed, keeping only the segments of
+     * generations up to {@code committedGeneration}. Months are taken in {@code zone}.
+     */
+    public static TransactionArchive open(Path directory, int committedGeneration, ZoneId zone) throws IOException {
+        Files.createDirectories(directory);
+        TransactionArchive archive = new TransactionArchive(directory, zone);
+        for (Path segment : archive.segments()) {
+            if (generationOf(segment) > committedGeneration) {
+                Files.delete(segment);
+            }
+        }
+        return archive;
+    }
+
+    /**
+     * Months with archived transactions, oldest first.
+     */
+    public List<YearMonth> months() throws IOException {
+        SortedSet<YearMonth> months = new TreeSet<>();
+        for (Path segment : segments()) {
+            months.add(monthOf(segment));
+        }
+        return new ArrayList<>(months);
+    }
+
+    /**
+     * The account's archived transactions from {@code month}, oldest first.
+     */
+    public List<Transaction> history(String accountNumber, YearMonth month) throws IOException {
+        List<Transaction> history = new ArrayList<>();
+        for (Path segment : segments()) {
+            if (monthOf(segment).equals(month)) {
+                read(segment, accountNumber, history);
+            }
+        }
+        return history;
+    }
+
+    /**
+     * Starts the segments written by the compaction that creates store generation {@code generation}.
+     */
+    public Writer newWriter(int generation) {
+        return new Writer(generation);
+    }
+
+    /**
+     * Appends to one segment per month as transactions arrive. Nothing is durable until {@link #finish};
+     * closing without finishing deletes what was written.
+     */
+    public final class Writer implements Closeable {
+        private final int generation;
+        private final Map<YearMonth, Segment> segments = new HashMap<>();
+        private long transactions;
+        private boolean finished;
+
+        private Writer(int generation) {
+            this.generation = generation;
+        }
+
+        public void append(Transaction transaction) throws IOException {
+            YearMonth month = YearMonth.from(Instant.ofEpochMilli(transaction.getTimestamp()).atZone(zone));
+            Segment segment = segments.get(month);
+            if (segment == null) {
+                segment = new Segment(directory.resolve(String.format("%s-%06d.gz", month, generation)));
+                segments.put(month, segment);
+            }
+            DataOutputStream out = segment.out;
+            out.writeByte(1);
+            out.writeUTF(transaction.getAccountNumber());
+            out.writeUTF(transaction.getTransactionId());
+            out.writeLong(transaction.getTimestamp());
+            out.writeByte(transaction.getTransactionType().ordinal());
+            out.writeLong(transaction.getAmount());
+            out.writeUTF(transaction.getDescription());
+            transactions++;
+        }
+
+        /**
+         * Ends every segment and forces it to disk.
+         */
+        public void finish() throws IOException {
+            for (Segment segment : segments.values()) {
+                segment.out.writeByte(0);
+                segment.out.flush();
+                segment.gzip.finish();
+                segment.file.getFD().sync();
+                segment.out.close();
+            }
+            finished = true;
+        }
+
+        public long getTransactions() {
+            return transactions;
+        }
+
+        public int getSegments() {
+            return segments.size();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (finished) {
+                return;
+            }
+            for (Segment segment : segments.values()) {
+                segment.out.close();
+                Files.deleteIfExists(segment.path);
+            }
+        }
+    }
+
+    private static final class Segment {
+        private final Path path;
+        private final FileOutputStream file;
+        private final GZIPOutputStream gzip;
+        private final DataOutputStream out;
+
+        private Segment(Path path) throws IOException {
+            this.path = path;
+            file = new FileOutputStream(path.toFile());
+            gzip = new GZIPOutputStream(file, BUFFER_SIZE);
+            out = new DataOutputStream(new BufferedOutputStream(gzip, BUFFER_SIZE));
+            out.writeInt(MAGIC);
+            out.writeInt(BinarySnapshots.FORMAT_VERSION);
+        }
+    }
+
+    // Segments of every month, in generation order within each month
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> SEGMENT_FILE.matcher(file.getFileName().toString()).matches())
+                    .sorted(Comparator.comparing((Path file) -> file.getFileName().toString()))
+                    .toList();
+        }
+    }
+
+    private static void read(Path segment, String accountNumber, List<Transaction> history) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(segment), BUFFER_SIZE), BUFFER_SIZE))) {
+            if (in.readInt() != MAGIC || in.readInt() != BinarySnapshots.FORMAT_VERSION) {
+                throw new IOException("Not a transaction archive segment: " + segment);
+            }
+            while (in.readByte() != 0) {
+                String account = in.readUTF();
+                String transactionId = in.readUTF();
+                long timestamp = in.readLong();
+                int type = in.readByte();
+                long amount = in.readLong();
+                String description = in.readUTF();
+                if (type < 0 || type >= TRANSACTION_TYPES.length) {
+                    throw new IOException("Corrupt archive segment " + segment + ": transaction type " + type);
+                }
+                if (account.equals(accountNumber)) {
+                    history.add(new Transaction(transactionId, timestamp, account, TRANSACTION_TYPES[type], amount, description));
+                }
+            }
+            if (in.read() != -1) { // Reading to the end also checks the gzip CRC
+                throw new IOException("Corrupt archive segment " + segment + ": data after the last transaction");
+            }
+        } catch (EOFException e) {
+            throw new IOException("Archive segment " + segment + " is truncated", e);
+        }
+    }
+
+    private static YearMonth monthOf(Path segment) {
+        Matcher matcher = SEGMENT_FILE.matcher(segment.getFileName().toString());
+        matcher.matches();
+        return YearMonth.parse(matcher.group(1));
+    }
+
+    private static int generationOf(Path segment) {
+        Matcher matcher = SEGMENT_FILE.matcher(segment.getFileName().toString());
+        matcher.matches();
+        return Integer.parseInt(matcher.group(2));
+    }
+}
@@ -0,0 +1,39 @@
+package ledger;
+
+import java.util.function.Predicate;
+
+/**
+ * Where a {@link LedgerEngine} keeps its transaction history.
+ *
+ * Stores are append-only and read back per account, newest first. Implementations need not be
+ * thread-safe; the engine serializes every call under its ledger lock.
+ */
+public interface TransactionStore {
+
+    /**
+     * Cursor for the first page of an account's history, i.e. starting from its newest transaction.
+     */
+    long NEWEST = Long.MAX_VALUE;
+
+    void append(Transaction transaction);
+
+    long size();
+
+    int count(String accountNumber);
+
+    /**
+     * Up to {@code pageSize} of the account's transactions, newest first, starting at {@code cursor}:
+     * {@link #NEWEST} for the first page, or {@link HistoryPage#getNextCursor()} of the previous one.
+     *
+     * @throws IllegalArgumentException if {@code cursor} is not one this store handed out for the account;
+     *                                  cursors can come from outside, as in {@link LedgerHttpServer}
+     */
+    HistoryPage page(String accountNumber, long cursor, int pageSize);
+
+    /**
+     * Visits the account's transactions newest first for as long as {@code action} returns true.
+     */
+    void forEachNewestFirst(String accountNumber, Predicate<Transaction> action);
+
+    void clear();
+}
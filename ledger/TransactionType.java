@@ -0,0 +1,12 @@
+package ledger;
+
+import java.io.Serializable;
+
+public enum TransactionType implements Serializable { // Implement Serializable
+    DEPOSIT,
+    WITHDRAWAL,
+    TRANSFER_IN,
+    TRANSFER_OUT,
+    INTEREST, // Posted by MonthEndJob; new types go last because snapshots store the ordinal
+    CARRIED_FORWARD // Balance of the history moved to the archive by compaction
+}
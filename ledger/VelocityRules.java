@@ -0,0 +1,326 @@
+package ledger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Velocity rules that cap how often, or how much, money can leave an account within a sliding window,
+ * such as "no more than 5 transfers or $2000.00 in 10 minutes". {@link LedgerEngine} checks them before
+ * a withdrawal or transfer is journaled and declines it if it would break one.
+ *
+ * Each account keeps, for every rule, a ring of {@link #SLOTS} time buckets holding the count and the
+ * sum of the debits made in each, plus running totals of the whole ring. A check moves the ring up to
+ * the current bucket, clearing the buckets that have fallen out, and compares the totals with the rule:
+ * at most {@link #SLOTS} steps however many debits the window holds, with no allocation. Buckets are
+ * {@code window / (SLOTS - 1)} wide, so the ring always covers the whole window and at most one bucket
+ * more; a rule can only be stricter than its window, never looser. An account's rings take about
+ * {@code 35 * 8} bytes per rule and are created at its first debit.
+ *
+ * Like {@link MonthlyWithdrawalCounter}, the rings are fed from every transaction added to the history,
+ * including on journal replay, and one account's rings must only be used by one thread at a time, which
+ * the engine's per-account locks guarantee.
+ *
+ * Rules load from a file, one per line, comma separated; blank lines and lines starting with {@code #}
+ * are skipped:
+ * <pre>
+ * &lt;name&gt;,&lt;withdraw|transfer|any&gt;,&lt;window minutes&gt;,&lt;max count or -&gt;,&lt;max amount or -&gt;
+ * </pre>
+ */
+public final class VelocityRules {
+
+    public static final int SLOTS = 16;
+
+    // Per rule in an account's state: [last bucket][total count][total amount][SLOTS counts][SLOTS amounts]
+    private static final int LAST_BUCKET = 0;
+    private static final int TOTAL_COUNT = 1;
+    private static final int TOTAL_AMOUNT = 2;
+    private static final int COUNTS = 3;
+    private static final int AMOUNTS = COUNTS + SLOTS;
+    private static final int STRIDE = AMOUNTS + SLOTS;
+
+    /**
+     * Which debits a rule counts.
+     */
+    public enum Scope {
+        WITHDRAW("withdrawals"),
+        TRANSFER("transfers"),
+        ANY("withdrawals and transfers");
+
+        private final String label;
+
+        Scope(String label) {
+            this.label = label;
+        }
+
+        boolean covers(TransactionType type) {
+            return switch (this) {
+                case WITHDRAW -> type == TransactionType.WITHDRAWAL;
+                case TRANSFER -> type == TransactionType.TRANSFER_OUT;
+                case ANY -> type == TransactionType.WITHDRAWAL || type == TransactionType.TRANSFER_OUT;
+            };
+        }
+    }
+
+    public static final class Rule {
+        private final String name;
+        private final Scope scope;
+        private final int windowMinutes;
+        private final long bucketMillis;
+        private final int maxCount; // -1 for no limit
+        private final long maxAmount; // In cents, -1 for no limit
+        private final String rejection;
+        private final LongAdder hits = new LongAdder();
+
+        public Rule(String name, Scope scope, int windowMinutes, int maxCount, long maxAmount) {
+            if (windowMinutes <= 0) {
+                throw new IllegalArgumentException("Window must be at least one minute: " + windowMinutes);
+            }
+            if (maxCount < 0 && maxAmount < 0) {
+                throw new IllegalArgumentException("Rule " + name + " limits neither count nor amount");
+            }
+            this.name = name;
+            this.scope = scope;
+            this.windowMinutes = windowMinutes;
+            this.bucketMillis = (windowMinutes * 60_000L + SLOTS - 2) / (SLOTS - 1); // Rounded up
+            this.maxCount = maxCount;
+            this.maxAmount = maxAmount;
+            rejection = "Declined by velocity rule " + name + ": no more than " + limits() + " in " + windowMinutes + " minutes.";
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Scope getScope() {
+            return scope;
+        }
+
+        public int getWindowMinutes() {
+            return windowMinutes;
+        }
+
+        /**
+         * Times this rule has declined a debit.
+         */
+        public long getHits() {
+            return hits.sum();
+        }
+
+        String getRejection() {
+            return rejection;
+        }
+
+        private String limits() {
+            String count = maxCount >= 0 ? maxCount + " " + scope.label : null;
+            String amount = maxAmount >= 0 ? "$" + Money.format(maxAmount) + " of " + scope.label : null;
+            return count == null ? amount : amount == null ? count : count + " or " + amount;
+        }
+    }
+
+    private final Rule[] rules;
+    private final long longestWindowMillis;
+    private final Map<String, long[]> windows = new ConcurrentHashMap<>(); // Account Number -> rings of every rule
+
+    public VelocityRules(List<Rule> rules) {
+        this.rules = rules.toArray(new Rule[0]);
+        long longest = 0L;
+        for (Rule rule : this.rules) {
+            longest = Math.max(longest, rule.bucketMillis * SLOTS);
+        }
+        longestWindowMillis = longest;
+    }
+
+    /**
+     * No rules: every check passes.
+     */
+    public static VelocityRules none() {
+        return new VelocityRules(List.of());
+    }
+
+    /**
+     * Reads rules in the format described above.
+     *
+     * @throws IOException if the file cannot be read or a line is not a valid rule
+     */
+    public static VelocityRules load(Path file) throws IOException {
+        List<Rule> rules = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                String trimmed = line.trim();
+                if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                    continue;
+                }
+                try {
+                    Rule rule = parse(trimmed);
+                    if (!names.add(rule.name)) {
+                        throw new IllegalArgumentException("Duplicate rule name " + rule.name);
+                    }
+                    rules.add(rule);
+                } catch (IllegalArgumentException e) { // Including NumberFormatException
+                    throw new IOException(file + " line " + lineNumber + ": " + e.getMessage(), e);
+                }
+            }
+        }
+        return new VelocityRules(rules);
+    }
+
+    private static Rule parse(String line) {
+        String[] fields = line.split(",", -1);
+        if (fields.length != 5) {
+            throw new IllegalArgumentException("Expected <name>,<withdraw|transfer|any>,<window minutes>,<max count or ->,<max amount or ->");
+        }
+        String name = fields[0].trim();
+        if (name.isEmpty()) {
+            throw new IllegalArgumentException("Rule name is empty");
+        }
+        Scope scope;
+        try {
+            scope = Scope.valueOf(fields[1].trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Rule applies to withdraw, transfer or any, not " + fields[1].trim());
+        }
+        int windowMinutes = Integer.parseInt(fields[2].trim());
+        boolean noCountLimit = fields[3].trim().equals("-");
+        boolean noAmountLimit = fields[4].trim().equals("-");
+        int maxCount = noCountLimit ? -1 : Integer.parseInt(fields[3].trim());
+        long maxAmount = noAmountLimit ? -1L : Money.parse(fields[4]);
+        if ((!noCountLimit && maxCount < 0) || (!noAmountLimit && maxAmount < 0)) {
+            throw new IllegalArgumentException("Limits cannot be negative");
+        }
+        return new Rule(name, scope, windowMinutes, maxCount, maxAmount);
+    }
+
+    public List<Rule> getRules() {
+        return List.of(rules);
+    }
+
+    public boolean isEmpty() {
+        return rules.length == 0;
+    }
+
+    /**
+     * How far back a debit can still count towards some rule, or 0 without rules.
+     */
+    public long getLongestWindowMillis() {
+        return longestWindowMillis;
+    }
+
+    /**
+     * The first rule that a debit of {@code amount} out of the account at {@code now} would break, or
+     * null if it breaks none. Counts a hit against that rule. The debit itself is not counted; that
+     * happens when it is recorded.
+     */
+    public Rule check(String accountNumber, TransactionType type, long amount, long now) {
+        long[] state = windows.get(accountNumber);
+        for (int i = 0; i < rules.length; i++) {
+            Rule rule = rules[i];
+            if (!rule.scope.covers(type)) {
+                continue;
+            }
+            long count = 0L;
+            long total = 0L;
+            if (state != null) {
+                int base = i * STRIDE;
+                advance(state, base, now / rule.bucketMillis);
+                count = state[base + TOTAL_COUNT];
+                total = state[base + TOTAL_AMOUNT];
+            }
+            if ((rule.maxCount >= 0 && count >= rule.maxCount) || (rule.maxAmount >= 0 && total > rule.maxAmount - amount)) {
+                rule.hits.increment();
+                return rule;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Counts a transaction towards the rules that cover its type. Transactions older than a rule's ring
+     * are left out of it.
+     */
+    public void record(Transaction transaction) {
+        if (rules.length == 0) {
+            return;
+        }
+        TransactionType type = transaction.getTransactionType();
+        if (type != TransactionType.WITHDRAWAL && type != TransactionType.TRANSFER_OUT) {
+            return;
+        }
+        long[] state = windows.get(transaction.getAccountNumber());
+        if (state == null) { // Looked up first because the lambda, which captures this, is allocated on every call
+            state = windows.computeIfAbsent(transaction.getAccountNumber(), key -> new long[rules.length * STRIDE]);
+        }
+        for (int i = 0; i < rules.length; i++) {
+            Rule rule = rules[i];
+            if (!rule.scope.covers(type)) {
+                continue;
+            }
+            int base = i * STRIDE;
+            long bucket = transaction.getTimestamp() / rule.bucketMillis;
+            advance(state, base, bucket);
+            if (bucket <= state[base + LAST_BUCKET] - SLOTS) {
+                continue; // Already out of the ring
+            }
+            int slot = (int) (bucket % SLOTS);
+            state[base + COUNTS + slot]++;
+            state[base + AMOUNTS + slot] += transaction.getAmount();
+            state[base + TOTAL_COUNT]++;
+            state[base + TOTAL_AMOUNT] += transaction.getAmount();
+        }
+    }
+
+    public void remove(String accountNumber) {
+        windows.remove(accountNumber);
+    }
+
+    public void clear() {
+        windows.clear();
+    }
+
+    // Moves the ring forward to bucket, clearing every bucket it passes. Never moves it back.
+    private static void advance(long[] state, int base, long bucket) {
+        long last = state[base + LAST_BUCKET];
+        if (bucket <= last) {
+            return;
+        }
+        if (bucket - last >= SLOTS) {
+            Arrays.fill(state, base + TOTAL_COUNT, base + STRIDE, 0L);
+        } else {
+            for (long b = last + 1; b <= bucket; b++) {
+                int slot = (int) (b % SLOTS);
+                state[base + TOTAL_COUNT] -= state[base + COUNTS + slot];
+                state[base + TOTAL_AMOUNT] -= state[base + AMOUNTS + slot];
+                state[base + COUNTS + slot] = 0L;
+                state[base + AMOUNTS + slot] = 0L;
+            }
+        }
+        state[base + LAST_BUCKET] = bucket;
+    }
+
+    /**
+     * A table of the rules and how many debits each has declined.
+     */
+    @Override
+    public String toString() {
+        if (rules.length == 0) {
+            return "No velocity rules loaded." + System.lineSeparator();
+        }
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.ROOT, "%-24s %-10s %10s %10s %14s %10s%n", "Velocity rule", "Applies to", "Minutes", "Max count", "Max amount", "Hits"));
+        for (Rule rule : rules) {
+            report.append(String.format(Locale.ROOT, "%-24s %-10s %10d %10s %14s %10d%n", rule.name, rule.scope.name().toLowerCase(Locale.ROOT),
+                    rule.windowMinutes, rule.maxCount >= 0 ? Integer.toString(rule.maxCount) : "-",
+                    rule.maxAmount >= 0 ? Money.format(rule.maxAmount) : "-", rule.getHits()));
+        }
+        return report.toString();
+    }
+}
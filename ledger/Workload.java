@@ -0,0 +1,214 @@
+package ledger;
+
+import java.util.Random;
+
+/**
+ * A synthetic, reproducible ledger workload: a population of accounts and an endless stream of deposits,
+ * withdrawals and transfers over them, for driving a {@link LedgerEngine} the way production traffic
+ * would instead of through the console.
+ *
+ * Accounts are numbered from 0. Account {@code i}'s type and opening balance depend only on the seed and
+ * {@code i}, so they can be read in any order. Which accounts the operations touch follows a Zipf
+ * distribution: the account of popularity rank {@code k} (account {@code k - 1}) is picked with
+ * probability proportional to {@code 1 / k^skew}, so with a skew around 1 a few accounts get most of the
+ * traffic, and a skew of 0 spreads it evenly. Ranks are drawn by rejection-inversion sampling (Hormann
+ * and Derflinger), which needs no table however many accounts there are.
+ *
+ * The same seed and settings always produce the same accounts and the same operations in the same
+ * order, on any JVM, since {@link Random}'s algorithm is fixed by its specification.
+ */
+public final class Workload {
+
+    public enum OperationType {
+        DEPOSIT,
+        WITHDRAW,
+        TRANSFER
+    }
+
+    /**
+     * One generated operation. Accounts are indexes into the workload's accounts; the counterparty is
+     * the transfer's destination, or -1.
+     */
+    public static final class Operation {
+        private final OperationType type;
+        private final int account;
+        private final int counterparty;
+        private final long amount; // In cents
+
+        private Operation(OperationType type, int account, int counterparty, long amount) {
+            this.type = type;
+            this.account = account;
+            this.counterparty = counterparty;
+            this.amount = amount;
+        }
+
+        public OperationType getType() {
+            return type;
+        }
+
+        public int getAccount() {
+            return account;
+        }
+
+        public int getCounterparty() {
+            return counterparty;
+        }
+
+        public long getAmount() {
+            return amount;
+        }
+    }
+
+    private static final long MIN_AMOUNT = 1_00L;
+    private static final long MAX_DEPOSIT = 500_00L;
+    private static final long MAX_WITHDRAWAL = 200_00L;
+    private static final long MAX_TRANSFER = 300_00L;
+    private static final long MIN_OPENING_BALANCE = 100_00L; // Above the SAVINGS minimum deposit
+    private static final long MAX_OPENING_BALANCE = 10_000_00L;
+
+    private final int accountCount;
+    private final double savingsFraction;
+    private final int depositPercent;
+    private final int withdrawPercent;
+    private final long seed;
+    private final Random random;
+    private final ZipfSampler popularity;
+
+    /**
+     * @param accountCount    how many accounts the workload has, at least 1
+     * @param savingsFraction share of them that are SAVINGS accounts, from 0 to 1; the rest are CHECKING
+     * @param skew            Zipf exponent of account popularity, 0 for uniform
+     * @param depositPercent  share of the operations that are deposits
+     * @param withdrawPercent share that are withdrawals; the rest are transfers
+     * @param seed            what makes two runs the same
+     */
+    public Workload(int accountCount, double savingsFraction, double skew, int depositPercent, int withdrawPercent, long seed) {
+        if (accountCount < 1) {
+            throw new IllegalArgumentException("A workload needs at least one account");
+        }
+        if (savingsFraction < 0 || savingsFraction > 1) {
+            throw new IllegalArgumentException("Savings fraction must be between 0 and 1: " + savingsFraction);
+        }
+        if (skew < 0) {
+            throw new IllegalArgumentException("Skew cannot be negative: " + skew);
+        }
+        if (depositPercent < 0 || withdrawPercent < 0 || depositPercent + withdrawPercent > 100) {
+            throw new IllegalArgumentException("Deposit and withdrawal percentages must be non-negative and add up to at most 100");
+        }
+        this.accountCount = accountCount;
+        this.savingsFraction = savingsFraction;
+        this.depositPercent = depositPercent;
+        this.withdrawPercent = withdrawPercent;
+        this.seed = seed;
+        this.random = new Random(seed);
+        this.popularity = new ZipfSampler(accountCount, skew);
+    }
+
+    public int getAccountCount() {
+        return accountCount;
+    }
+
+    public AccountType accountType(int account) {
+        return unitInterval(hash(account, 1)) < savingsFraction ? AccountType.SAVINGS : AccountType.CHECKING;
+    }
+
+    // In cents
+    public long openingBalance(int account) {
+        return MIN_OPENING_BALANCE + (long) (unitInterval(hash(account, 2)) * (MAX_OPENING_BALANCE - MIN_OPENING_BALANCE));
+    }
+
+    public String name(int account) {
+        return "Customer " + account;
+    }
+
+    /**
+     * The next operation of the stream.
+     */
+    public Operation next() {
+        int percent = random.nextInt(100);
+        int account = popularity.sample(random) - 1;
+        if (percent < depositPercent) {
+            return new Operation(OperationType.DEPOSIT, account, -1, amount(MAX_DEPOSIT));
+        }
+        if (percent < depositPercent + withdrawPercent || accountCount == 1) {
+            return new Operation(OperationType.WITHDRAW, account, -1, amount(MAX_WITHDRAWAL));
+        }
+        int counterparty;
+        do {
+            counterparty = popularity.sample(random) - 1;
+        } while (counterparty == account);
+        return new Operation(OperationType.TRANSFER, account, counterparty, amount(MAX_TRANSFER));
+    }
+
+    private long amount(long max) {
+        return MIN_AMOUNT + (long) (random.nextDouble() * (max - MIN_AMOUNT + 1));
+    }
+
+    // SplitMix64 of the seed, the account and which property is wanted
+    private long hash(int account, int property) {
+        long z = seed + 0x9E3779B97F4A7C15L * ((long) account * 4 + property);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static double unitInterval(long hash) {
+        return (hash >>> 11) * 0x1.0p-53;
+    }
+
+    // Ranks 1 to n with P(k) proportional to k^-exponent, by rejection-inversion: a continuous hat
+    // function is inverted and the rare samples that fall outside the discrete distribution are redrawn.
+    private static final class ZipfSampler {
+        private final int n;
+        private final double exponent;
+        private final double hIntegralX1;
+        private final double hIntegralN;
+        private final double s;
+
+        private ZipfSampler(int n, double exponent) {
+            this.n = n;
+            this.exponent = exponent;
+            hIntegralX1 = hIntegral(1.5) - 1.0;
+            hIntegralN = hIntegral(n + 0.5);
+            s = 2.0 - hIntegralInverse(hIntegral(2.5) - h(2.0));
+        }
+
+        private int sample(Random random) {
+            if (exponent == 0.0) {
+                return random.nextInt(n) + 1;
+            }
+            while (true) {
+                double u = hIntegralN + random.nextDouble() * (hIntegralX1 - hIntegralN);
+                double x = hIntegralInverse(u);
+                int k = (int) Math.max(1, Math.min(n, (long) (x + 0.5)));
+                if (k - x <= s || u >= hIntegral(k + 0.5) - h(k)) {
+                    return k;
+                }
+            }
+        }
+
+        private double h(double x) {
+            return Math.exp(-exponent * Math.log(x));
+        }
+
+        // Integral of h from 1 to x, shifted by a constant
+        private double hIntegral(double x) {
+            double logX = Math.log(x);
+            return expm1OverX((1.0 - exponent) * logX) * logX;
+        }
+
+        private double hIntegralInverse(double x) {
+            double t = Math.max(-1.0, x * (1.0 - exponent));
+            return Math.exp(log1pOverX(t) * x);
+        }
+
+        // log(1 + x) / x and (e^x - 1) / x, with series near 0 where the quotients lose precision
+        private static double log1pOverX(double x) {
+            return Math.abs(x) > 1e-8 ? Math.log1p(x) / x : 1.0 - x * (0.5 - x * (1.0 / 3.0 - 0.25 * x));
+        }
+
+        private static double expm1OverX(double x) {
+            return Math.abs(x) > 1e-8 ? Math.expm1(x) / x : 1.0 + x * 0.5 * (1.0 + x / 3.0 * (1.0 + 0.25 * x));
+        }
+    }
+}